@@ -0,0 +1,55 @@
+package io.github.ericmedvet.respap.hrefla.bench;
+
+import io.github.ericmedvet.jgea.experimenter.InvertibleMapper;
+import io.github.ericmedvet.mrsim2d.core.EmbodiedAgent;
+import io.github.ericmedvet.respap.hrefla.CachedBuilder;
+import io.github.ericmedvet.robotevo2d.main.PreparedNamedBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Measures the cost of building the mapper of a robot from its expression, of applying it to a genotype, and of
+ * building the agent from the outcome of the mapper.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BuilderBenchmark {
+
+  @Param({"LEGGED_OPEN_2", "VSR_OPEN", "VSR_CLOSED"})
+  public Robot robot;
+
+  private String mapperExpression;
+  private InvertibleMapper<List<Double>, Supplier<EmbodiedAgent>> mapper;
+  private List<Double> genotype;
+  private Supplier<EmbodiedAgent> agentSupplier;
+
+  @Benchmark
+  public Supplier<EmbodiedAgent> applyMapper() {
+    return mapper.apply(genotype);
+  }
+
+  @Benchmark
+  public Object buildMapper() {
+    return PreparedNamedBuilder.get().build(mapperExpression);
+  }
+
+  @Benchmark
+  public EmbodiedAgent buildAgent() {
+    return agentSupplier.get();
+  }
+
+  @Setup
+  public void setup() {
+    mapperExpression = CachedBuilder.mapperExpression(robot.target());
+    mapper = new CachedBuilder(PreparedNamedBuilder.get(), 1).mapper(robot.target());
+    genotype = Robot.genotype(mapper.exampleInput().size());
+    agentSupplier = mapper.apply(genotype);
+  }
+}
@@ -0,0 +1,37 @@
+package io.github.ericmedvet.respap.hrefla.bench;
+
+import io.github.ericmedvet.mrsim2d.core.engine.Engine;
+import io.github.ericmedvet.respap.hrefla.EngineFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the creation of an engine through a {@link java.util.ServiceLoader} lookup with the one through an
+ * {@link EngineFactory}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+
+  private EngineFactory engineFactory;
+
+  @Benchmark
+  public Engine lookup() {
+    return EngineFactory.lookup();
+  }
+
+  @Benchmark
+  public Engine factory() {
+    return engineFactory.get();
+  }
+
+  @Setup
+  public void setup() {
+    engineFactory = EngineFactory.fromServiceLoader();
+  }
+}
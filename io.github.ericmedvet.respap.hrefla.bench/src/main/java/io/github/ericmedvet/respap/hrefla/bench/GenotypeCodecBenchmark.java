@@ -0,0 +1,127 @@
+package io.github.ericmedvet.respap.hrefla.bench;
+
+import io.github.ericmedvet.respap.hrefla.GenotypeCodec;
+import io.github.ericmedvet.respap.hrefla.Starter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.*;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the legacy genotype encoding (Java serialization of a {@code List<Double>} and Base64) with
+ * {@link GenotypeCodec}, in throughput and in encoded size; {@link Starter#serialize(List)} and
+ * {@link Starter#deserialize(String)} are measured as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenotypeCodecBenchmark {
+
+  @Param({"10", "100", "400"})
+  public int p;
+
+  private List<Double> genotype;
+  private String legacyString;
+  private String float64String;
+  private String float32String;
+
+  public static List<Double> genotype(int p) {
+    Random random = new Random(1);
+    return IntStream.range(0, p).mapToObj(i -> random.nextDouble(-1, 1)).toList();
+  }
+
+  public static List<Double> legacyDecode(String s) throws IOException, ClassNotFoundException {
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(s)))) {
+      //noinspection unchecked
+      return (List<Double>) ois.readObject();
+    }
+  }
+
+  public static String legacyEncode(List<Double> values) throws IOException {
+    try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
+         ObjectOutputStream oos = new ObjectOutputStream(baos)
+    ) {
+      oos.writeObject(values);
+      oos.flush();
+      return Base64.getEncoder().encodeToString(baos.toByteArray());
+    }
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    System.out.printf("%5s %8s %8s %8s%n", "p", "legacy", "float64", "float32");
+    for (int p : List.of(10, 100, 400)) {
+      List<Double> genotype = genotype(p);
+      System.out.printf(
+          "%5d %8d %8d %8d%n",
+          p,
+          legacyEncode(genotype).length(),
+          GenotypeCodec.encodeToString(genotype, GenotypeCodec.Precision.FLOAT64).length(),
+          GenotypeCodec.encodeToString(genotype, GenotypeCodec.Precision.FLOAT32).length()
+      );
+    }
+    new Runner(new OptionsBuilder().include(GenotypeCodecBenchmark.class.getSimpleName()).build()).run();
+  }
+
+  @Benchmark
+  public List<Double> decodeFloat32() {
+    return GenotypeCodec.decode(float32String);
+  }
+
+  @Benchmark
+  public List<Double> decodeFloat64() {
+    return GenotypeCodec.decode(float64String);
+  }
+
+  @Benchmark
+  public List<Double> decodeLegacy() throws IOException, ClassNotFoundException {
+    return legacyDecode(legacyString);
+  }
+
+  @Benchmark
+  public List<Double> decodeLegacyWithCodec() {
+    return GenotypeCodec.decode(legacyString);
+  }
+
+  @Benchmark
+  public String encodeFloat32() {
+    return GenotypeCodec.encodeToString(genotype, GenotypeCodec.Precision.FLOAT32);
+  }
+
+  @Benchmark
+  public String encodeFloat64() {
+    return GenotypeCodec.encodeToString(genotype, GenotypeCodec.Precision.FLOAT64);
+  }
+
+  @Benchmark
+  public String encodeLegacy() throws IOException {
+    return legacyEncode(genotype);
+  }
+
+  @Benchmark
+  public List<Double> starterDeserialize() {
+    return Starter.deserialize(float64String);
+  }
+
+  @Benchmark
+  public String starterSerialize() {
+    return Starter.serialize(genotype);
+  }
+
+  @Setup
+  public void setup() throws IOException {
+    genotype = genotype(p);
+    legacyString = legacyEncode(genotype);
+    float64String = GenotypeCodec.encodeToString(genotype, GenotypeCodec.Precision.FLOAT64);
+    float32String = GenotypeCodec.encodeToString(genotype, GenotypeCodec.Precision.FLOAT32);
+  }
+}
@@ -0,0 +1,46 @@
+package io.github.ericmedvet.respap.hrefla.bench;
+
+import io.github.ericmedvet.mrsim2d.core.util.DoubleRange;
+import io.github.ericmedvet.respap.hrefla.Grid;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of building a grid point from its linear index, with and without reusing the output array.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridBenchmark {
+
+  @Param({"3", "12"})
+  public int p;
+  @Param({"5", "20"})
+  public int n;
+
+  private Grid grid;
+  private double[] out;
+  private long index;
+
+  @Benchmark
+  public double[] get() {
+    index = (index + 7919) % grid.size();
+    return grid.get(index);
+  }
+
+  @Benchmark
+  public double[] getReusing() {
+    index = (index + 7919) % grid.size();
+    return grid.get(index, out);
+  }
+
+  @Setup
+  public void setup() {
+    grid = new Grid(p, n, DoubleRange.SYMMETRIC_UNIT);
+    out = new double[p];
+  }
+}
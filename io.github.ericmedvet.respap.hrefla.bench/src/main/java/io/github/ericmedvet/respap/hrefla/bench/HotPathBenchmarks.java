@@ -0,0 +1,81 @@
+package io.github.ericmedvet.respap.hrefla.bench;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Runs the benchmarks of the evaluation hot path once for each given number of threads, saving the results of each
+ * run in a CSV file.
+ */
+public class HotPathBenchmarks implements Runnable {
+
+  private final static Logger L = Logger.getLogger(HotPathBenchmarks.class.getName());
+
+  @Parameter(
+      names = {"--include"},
+      description = "Regular expression of the benchmarks to be run"
+  )
+  public String include = "(Builder|Engine|Task|Grid|GenotypeCodec)Benchmark";
+  @Parameter(
+      names = {"--threads"},
+      description = "Numbers of threads with which each benchmark is run"
+  )
+  public List<Integer> threads = List.of(1, 2, 4, Runtime.getRuntime().availableProcessors());
+  @Parameter(
+      names = {"--resultFile"},
+      description = "Prefix of the path of the CSV files with the results, one for each number of threads"
+  )
+  public String resultFile = "hot-path";
+  @Parameter(
+      names = {"--quick"},
+      description = "Use one short warmup and measurement iteration, for checking that benchmarks run"
+  )
+  public boolean quick = false;
+
+  public static void main(String[] args) {
+    try {
+      HotPathBenchmarks hotPathBenchmarks = new HotPathBenchmarks();
+      JCommander.newBuilder()
+          .addObject(hotPathBenchmarks)
+          .build()
+          .parse(args);
+      hotPathBenchmarks.run();
+    } catch (ParameterException e) {
+      e.usage();
+      L.severe(String.format("Cannot read command line options: %s", e));
+      System.exit(-1);
+    } catch (RuntimeException e) {
+      L.severe(e.getClass().getSimpleName() + ": " + e.getMessage());
+      System.exit(-1);
+    }
+  }
+
+  @Override
+  public void run() {
+    for (int nOfThreads : threads.stream().distinct().toList()) {
+      L.info("Running %s with %d threads".formatted(include, nOfThreads));
+      ChainedOptionsBuilder optionsBuilder = new OptionsBuilder()
+          .include(include)
+          .threads(nOfThreads)
+          .resultFormat(ResultFormatType.CSV)
+          .result("%s-%dt.csv".formatted(resultFile, nOfThreads));
+      if (quick) {
+        optionsBuilder = optionsBuilder.warmupIterations(1).measurementIterations(1);
+      }
+      try {
+        new Runner(optionsBuilder.build()).run();
+      } catch (RunnerException e) {
+        throw new RuntimeException("Cannot run benchmarks with %d threads: %s".formatted(nOfThreads, e));
+      }
+    }
+  }
+}
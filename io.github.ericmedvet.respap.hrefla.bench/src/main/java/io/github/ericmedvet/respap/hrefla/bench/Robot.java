@@ -0,0 +1,31 @@
+package io.github.ericmedvet.respap.hrefla.bench;
+
+import io.github.ericmedvet.respap.hrefla.DomainChecker;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * The robot targets whose costs are benchmarked.
+ */
+public enum Robot {
+  LEGGED_OPEN_2(DomainChecker.LEGGED_OPEN_2_MAPPER),
+  VSR_OPEN(DomainChecker.VSR_OPEN_MAPPER),
+  VSR_CLOSED(DomainChecker.VSR_CLOSED_MAPPER);
+
+  private final String target;
+
+  Robot(String target) {
+    this.target = target;
+  }
+
+  public static List<Double> genotype(int p) {
+    Random random = new Random(1);
+    return IntStream.range(0, p).mapToObj(i -> random.nextDouble(-1, 1)).toList();
+  }
+
+  public String target() {
+    return target;
+  }
+}
@@ -0,0 +1,57 @@
+package io.github.ericmedvet.respap.hrefla.bench;
+
+import io.github.ericmedvet.mrsim2d.core.EmbodiedAgent;
+import io.github.ericmedvet.mrsim2d.core.tasks.Task;
+import io.github.ericmedvet.respap.hrefla.CachedBuilder;
+import io.github.ericmedvet.respap.hrefla.EngineFactory;
+import io.github.ericmedvet.robotevo2d.main.PreparedNamedBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Measures the cost of one evaluation, i.e., one run of the locomotion task followed by the fitness computation, for
+ * each robot and terrain. Each invocation takes seconds, hence iterations are longer than in the other benchmarks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 20)
+@Measurement(iterations = 3, time = 20)
+@Fork(1)
+public class TaskBenchmark {
+
+  private final static Map<String, String> TASKS = Map.of(
+      "flat", "s.task.locomotion(terrain = s.t.flat())",
+      "steppy", "s.task.locomotion(terrain = s.t.steppy(chunkW = 2; chunkH = 0.25))"
+  );
+  private final static String C_FUNCTION = "s.task.locomotion.xVelocity()";
+
+  @Param({"LEGGED_OPEN_2", "VSR_OPEN", "VSR_CLOSED"})
+  public Robot robot;
+  @Param({"flat", "steppy"})
+  public String terrain;
+
+  private Supplier<EmbodiedAgent> agentSupplier;
+  private Task<Supplier<EmbodiedAgent>, ?> task;
+  private Function<Object, Double> cFunction;
+  private EngineFactory engineFactory;
+
+  @Benchmark
+  public double run() {
+    return cFunction.apply(task.run(agentSupplier, engineFactory.get()));
+  }
+
+  @Setup
+  public void setup() {
+    CachedBuilder builder = new CachedBuilder(PreparedNamedBuilder.get(), 3);
+    agentSupplier = builder.mapper(robot.target())
+        .apply(Robot.genotype(builder.mapper(robot.target()).exampleInput().size()));
+    task = builder.task(TASKS.get(terrain));
+    cFunction = builder.cFunction(C_FUNCTION);
+    engineFactory = EngineFactory.fromServiceLoader();
+  }
+}
@@ -0,0 +1,187 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import io.github.ericmedvet.mrsim2d.core.util.DoubleRange;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+import java.util.logging.Logger;
+
+/**
+ * Samples a hypercube by recursively refining the cells where the fitness varies most. The hypercube is first
+ * divided in a coarse grid of cells whose centers are evaluated; the variation of a coarse cell is the largest
+ * absolute difference between its fitness and the one of its neighbours along each dimension. Then, cells are taken
+ * in decreasing order of variation and bisected along one dimension (cyclically, by level), evaluating the centers
+ * of the two halves; the variation of each half is the largest absolute difference among the fitness of the two
+ * halves and the one of their parent, or half the variation of the parent, if larger (so that a discontinuity
+ * falling between the evaluated centers is not missed at once). Only cells with a variation above the threshold and
+ * a level lower than the max depth are refined; refinement stops when no such cells are left or when the budget of
+ * evaluations is exhausted.
+ */
+public class AdaptiveGrid {
+
+  private final static Logger L = Logger.getLogger(AdaptiveGrid.class.getName());
+
+  private final int p;
+  private final int nOfCellsPerDimension;
+  private final DoubleRange domain;
+  private final int maxDepth;
+  private final double threshold;
+
+  public AdaptiveGrid(int p, int nOfCellsPerDimension, DoubleRange domain, int maxDepth, double threshold) {
+    if (p < 1) {
+      throw new IllegalArgumentException("Number of dimensions should be at least 1: got %d".formatted(p));
+    }
+    if (nOfCellsPerDimension < 1) {
+      throw new IllegalArgumentException("Number of cells per dimension should be at least 1: got %d".formatted(
+          nOfCellsPerDimension));
+    }
+    this.p = p;
+    this.nOfCellsPerDimension = nOfCellsPerDimension;
+    this.domain = domain;
+    this.maxDepth = maxDepth;
+    this.threshold = threshold;
+  }
+
+  public record Point(double[] genotype, int level, double q) {}
+
+  private record Cell(double[] min, double[] max, int level, double q, double variation) {
+    double[] center() {
+      double[] center = new double[min.length];
+      for (int i = 0; i < center.length; i = i + 1) {
+        center[i] = (min[i] + max[i]) / 2d;
+      }
+      return center;
+    }
+  }
+
+  private static Point evaluate(ToDoubleFunction<double[]> fitnessFunction, double[] genotype, int level) {
+    return new Point(genotype, level, fitnessFunction.applyAsDouble(genotype));
+  }
+
+  public long nOfCoarseCells() {
+    long n = 1;
+    for (int i = 0; i < p; i = i + 1) {
+      n = Math.multiplyExact(n, nOfCellsPerDimension);
+    }
+    return n;
+  }
+
+  public long explore(
+      Executor executor,
+      ToDoubleFunction<double[]> fitnessFunction,
+      int budget,
+      int maxInFlight,
+      Consumer<Point> consumer
+  ) {
+    long nOfCoarseCells = nOfCoarseCells();
+    if (nOfCoarseCells > budget) {
+      throw new IllegalArgumentException("Budget %d is lower than the %d cells of the coarse grid".formatted(
+          budget,
+          nOfCoarseCells
+      ));
+    }
+    //evaluate the coarse grid
+    double width = domain.extent() / nOfCellsPerDimension;
+    List<Point> coarsePoints = new ArrayList<>((int) nOfCoarseCells);
+    BoundedScheduler<Point> scheduler = new BoundedScheduler<>(executor, maxInFlight, true, point -> {
+      coarsePoints.add(point);
+      consumer.accept(point);
+    });
+    for (int i = 0; i < nOfCoarseCells; i = i + 1) {
+      double[] genotype = new double[p];
+      int remainder = i;
+      for (int j = 0; j < p; j = j + 1) {
+        genotype[j] = domain.min() + width * ((remainder % nOfCellsPerDimension) + 0.5d);
+        remainder = remainder / nOfCellsPerDimension;
+      }
+      scheduler.submit(() -> evaluate(fitnessFunction, genotype, 0));
+    }
+    scheduler.drain();
+    if (coarsePoints.size() < nOfCoarseCells) {
+      throw new IllegalStateException("Cannot refine: %d coarse cells failed".formatted(
+          nOfCoarseCells - coarsePoints.size()));
+    }
+    PriorityQueue<Cell> cells = new PriorityQueue<>(Comparator.comparingDouble(Cell::variation).reversed());
+    for (int i = 0; i < nOfCoarseCells; i = i + 1) {
+      double q = coarsePoints.get(i).q();
+      double variation = 0;
+      int stride = 1;
+      for (int j = 0; j < p; j = j + 1) {
+        int coordinate = (i / stride) % nOfCellsPerDimension;
+        if (coordinate > 0) {
+          variation = Math.max(variation, Math.abs(q - coarsePoints.get(i - stride).q()));
+        }
+        if (coordinate < nOfCellsPerDimension - 1) {
+          variation = Math.max(variation, Math.abs(q - coarsePoints.get(i + stride).q()));
+        }
+        stride = stride * nOfCellsPerDimension;
+      }
+      double[] min = new double[p];
+      double[] max = new double[p];
+      for (int j = 0; j < p; j = j + 1) {
+        min[j] = coarsePoints.get(i).genotype()[j] - width / 2d;
+        max[j] = coarsePoints.get(i).genotype()[j] + width / 2d;
+      }
+      offer(cells, new Cell(min, max, 0, q, variation));
+    }
+    long nOfEvaluations = nOfCoarseCells;
+    //refine, by rounds of at most maxInFlight evaluations
+    while (!cells.isEmpty() && nOfEvaluations + 2 <= budget) {
+      List<Cell> parents = new ArrayList<>();
+      while (!cells.isEmpty() && nOfEvaluations + 2 * (parents.size() + 1) <= budget
+          && 2 * (parents.size() + 1) <= Math.max(2, maxInFlight)) {
+        parents.add(cells.poll());
+      }
+      List<Point> children = new ArrayList<>(2 * parents.size());
+      scheduler = new BoundedScheduler<>(executor, maxInFlight, true, point -> {
+        children.add(point);
+        consumer.accept(point);
+      });
+      List<Cell> halves = new ArrayList<>(2 * parents.size());
+      for (Cell parent : parents) {
+        int d = parent.level() % p;
+        double middle = (parent.min()[d] + parent.max()[d]) / 2d;
+        double[] lowMax = Arrays.copyOf(parent.max(), p);
+        lowMax[d] = middle;
+        double[] highMin = Arrays.copyOf(parent.min(), p);
+        highMin[d] = middle;
+        halves.add(new Cell(parent.min(), lowMax, parent.level() + 1, Double.NaN, Double.NaN));
+        halves.add(new Cell(highMin, parent.max(), parent.level() + 1, Double.NaN, Double.NaN));
+      }
+      for (Cell half : halves) {
+        double[] genotype = half.center();
+        scheduler.submit(() -> evaluate(fitnessFunction, genotype, half.level()));
+      }
+      scheduler.drain();
+      nOfEvaluations = nOfEvaluations + halves.size();
+      if (children.size() < halves.size()) {
+        L.warning("%d evaluations failed: the cells of this round will not be refined".formatted(
+            halves.size() - children.size()));
+        continue;
+      }
+      for (int i = 0; i < parents.size(); i = i + 1) {
+        double parentQ = parents.get(i).q();
+        double lowQ = children.get(2 * i).q();
+        double highQ = children.get(2 * i + 1).q();
+        double variation = Math.max(
+            Math.max(Math.abs(lowQ - highQ), parents.get(i).variation() / 2d),
+            Math.max(Math.abs(lowQ - parentQ), Math.abs(highQ - parentQ))
+        );
+        Cell low = halves.get(2 * i);
+        Cell high = halves.get(2 * i + 1);
+        offer(cells, new Cell(low.min(), low.max(), low.level(), lowQ, variation));
+        offer(cells, new Cell(high.min(), high.max(), high.level(), highQ, variation));
+      }
+      L.fine("%d evaluations done, %d cells to be refined".formatted(nOfEvaluations, cells.size()));
+    }
+    return nOfEvaluations;
+  }
+
+  private void offer(PriorityQueue<Cell> cells, Cell cell) {
+    if (cell.level() < maxDepth && cell.variation() > threshold) {
+      cells.add(cell);
+    }
+  }
+}
@@ -0,0 +1,185 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * A {@link RowSink} that hands the rows, through a bounded queue, to a dedicated thread which writes them in batches
+ * to another sink, so that encoding and writing do not slow down the thread collecting the results: the latter
+ * blocks only when the queue is full. The other sink is flushed every {@code flushRows} rows and every
+ * {@code flushMillis} milliseconds, if positive. {@link #flush()} and {@link #close()} wait for all the rows queued
+ * before them to be written (and flushed). The commit listener is given to the other sink, hence it is notified by the
+ * writing thread after each of its flushes: a {@link Journal} on this sink commits without waiting for the output.
+ * Failures of the writing thread are thrown by the first subsequent invocation of any method.
+ */
+public class AsyncRowSink implements RowSink {
+
+  private final static Logger L = Logger.getLogger(AsyncRowSink.class.getName());
+
+  private final RowSink sink;
+  private final int flushRows;
+  private final long flushMillis;
+  private final BlockingQueue<Object> queue;
+  private final Thread thread;
+  private final long startingNanos;
+  private volatile IOException failure;
+  private volatile long nOfRows;
+  private volatile long nOfBatches;
+  private volatile long nOfFlushes;
+  private volatile long writingNanos;
+  private long nOfFullQueueWaits;
+  private boolean closed;
+
+  public AsyncRowSink(RowSink sink, int queueSize, int flushRows, long flushMillis) {
+    this.sink = sink;
+    this.flushRows = flushRows;
+    this.flushMillis = flushMillis;
+    queue = new ArrayBlockingQueue<>(queueSize);
+    startingNanos = System.nanoTime();
+    thread = new Thread(this::drain, "row-sink");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private record Barrier(CountDownLatch latch, boolean last) {}
+
+  private void checkFailure() throws IOException {
+    if (failure != null) {
+      throw new IOException("Cannot write rows: %s".formatted(failure), failure);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    await(new Barrier(new CountDownLatch(1), true));
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    sink.close();
+    L.fine("Output closed: %s".formatted(this));
+    checkFailure();
+  }
+
+  private void await(Barrier barrier) throws IOException {
+    try {
+      queue.put(barrier);
+      barrier.latch().await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for the rows to be written", e);
+    }
+  }
+
+  private void drain() {
+    List<Object> batch = new ArrayList<>();
+    long lastFlushNanos = System.nanoTime();
+    long nOfUnflushedRows = 0;
+    boolean last = false;
+    while (!last) {
+      try {
+        Object first = queue.poll(flushMillis > 0 ? flushMillis : 1000, TimeUnit.MILLISECONDS);
+        if (first != null) {
+          batch.add(first);
+          queue.drainTo(batch);
+        }
+      } catch (InterruptedException e) {
+        //the thread is private: nobody but the JVM interrupts it
+      }
+      long startingT = System.nanoTime();
+      for (Object o : batch) {
+        if (o instanceof Barrier barrier) {
+          if (failure == null && nOfUnflushedRows > 0) {
+            try {
+              sink.flush();
+              nOfFlushes = nOfFlushes + 1;
+            } catch (IOException e) {
+              failure = e;
+            }
+          }
+          nOfUnflushedRows = 0;
+          lastFlushNanos = System.nanoTime();
+          last = last || barrier.last();
+          barrier.latch().countDown();
+        } else if (failure == null) {
+          //after a failure, rows are discarded so that producers do not block forever
+          try {
+            sink.write((List<?>) o);
+            nOfRows = nOfRows + 1;
+            nOfUnflushedRows = nOfUnflushedRows + 1;
+          } catch (IOException e) {
+            failure = e;
+          }
+        }
+      }
+      if (failure == null && nOfUnflushedRows > 0 && ((flushRows > 0 && nOfUnflushedRows >= flushRows) || (
+          flushMillis > 0 && System.nanoTime() - lastFlushNanos >= flushMillis * 1_000_000L))) {
+        try {
+          sink.flush();
+          nOfFlushes = nOfFlushes + 1;
+        } catch (IOException e) {
+          failure = e;
+        }
+        nOfUnflushedRows = 0;
+        lastFlushNanos = System.nanoTime();
+      }
+      if (!batch.isEmpty()) {
+        nOfBatches = nOfBatches + 1;
+        writingNanos = writingNanos + System.nanoTime() - startingT;
+        batch.clear();
+      }
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    checkFailure();
+    await(new Barrier(new CountDownLatch(1), false));
+    checkFailure();
+  }
+
+  @Override
+  public void onCommit(CommitListener listener) {
+    sink.onCommit(listener);
+  }
+
+  @Override
+  public String toString() {
+    double writingSeconds = writingNanos / 1e9;
+    return "%d rows in %d batches with %d flushes, %.1fs writing (%.0f rows/s) over %.1fs, %d waits for a full queue"
+        .formatted(
+            nOfRows,
+            nOfBatches,
+            nOfFlushes,
+            writingSeconds,
+            nOfRows / writingSeconds,
+            (System.nanoTime() - startingNanos) / 1e9,
+            nOfFullQueueWaits
+        );
+  }
+
+  @Override
+  public void write(List<?> values) throws IOException {
+    checkFailure();
+    if (!queue.offer(values)) {
+      nOfFullQueueWaits = nOfFullQueueWaits + 1;
+      try {
+        queue.put(values);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while queuing a row", e);
+      }
+    }
+  }
+}
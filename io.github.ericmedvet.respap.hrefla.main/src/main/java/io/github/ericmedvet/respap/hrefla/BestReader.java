@@ -0,0 +1,282 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import io.github.ericmedvet.mrsim2d.core.util.DoubleRange;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the best individuals from the CSV files produced by the evolution (phase 1) in a single streaming pass. Rows
+ * are filtered on iteration and seed before anything else is done with them, and on target before their genotype is
+ * deserialized. Optionally, a sidecar index (next to the file, with the {@code .index} suffix) with the iteration,
+ * the seed, and the position of each row is used, so that only the selected rows are read and parsed: the index is
+ * built when missing or stale, i.e., when the size or the modification time of the file have changed.
+ */
+public class BestReader {
+
+  private final static Logger L = Logger.getLogger(BestReader.class.getName());
+
+  private final static int INDEX_MAGIC = 0x48524958;
+  private final static int INDEX_VERSION = 1;
+  private final static String TARGET_COLUMN = "solver.mapper.target";
+  private final static String SHAPE_COLUMN = "solver.mapper.target.body.shape";
+  private final static String FUNCTION_COLUMN = "solver.mapper.target.function";
+  private final static String SEED_COLUMN = "randomGenerator.seed";
+  private final static String ITERATION_COLUMN = "iterations";
+  private final static String GENOTYPE_COLUMN = "best→genotype→base64";
+  private final static String Q_COLUMN = "best→fitness→s.task.l.xVelocity";
+  private final static String VSR_TARGET_TEMPLATE = """
+      s.a.centralizedNumGridVSR(
+        body = s.a.vsr.gridBody(
+          sensorizingFunction = s.a.vsr.sf.directional(
+            headSensors = [s.s.sin(f = 0); s.s.d(a = -30; r = 10)];
+            nSensors = [s.s.ar(); s.s.rv(a = 0); s.s.rv(a = 90)];
+            sSensors = [s.s.d(a = -90)]
+          );
+          shape = %SHAPE%
+        );
+        function = %FUNCTION%
+      )
+      """;
+
+  private BestReader() {
+  }
+
+  public record Best(String target, int seed, int iteration, double[] genotype, double q) {}
+
+  public record Domain(SortedSet<Integer> genotypeSizes, DoubleRange enclosingRange, DoubleRange averageRange) {}
+
+  /**
+   * A filter on the rows: {@code null} fields accept any value.
+   */
+  public record Filter(Set<Integer> iterations, Set<Integer> seeds, Pattern target) {
+    public boolean accepts(int iteration, int seed) {
+      return (iterations == null || iterations.contains(iteration)) && (seeds == null || seeds.contains(seed));
+    }
+
+    public boolean accepts(String target) {
+      return this.target == null || this.target.matcher(target).find();
+    }
+  }
+
+  private record IndexEntry(int iteration, int seed, long offset, int length) {}
+
+  private static class DomainAccumulator {
+    private final SortedSet<Integer> genotypeSizes = new TreeSet<>();
+    private double[] mins = new double[0];
+    private double[] maxs = new double[0];
+
+    void add(double[] genotype) {
+      genotypeSizes.add(genotype.length);
+      if (genotype.length > mins.length) {
+        int l = mins.length;
+        mins = Arrays.copyOf(mins, genotype.length);
+        maxs = Arrays.copyOf(maxs, genotype.length);
+        Arrays.fill(mins, l, mins.length, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, l, maxs.length, Double.NEGATIVE_INFINITY);
+      }
+      for (int i = 0; i < genotype.length; i = i + 1) {
+        mins[i] = Math.min(mins[i], genotype[i]);
+        maxs[i] = Math.max(maxs[i], genotype[i]);
+      }
+    }
+
+    Domain domain() {
+      return new Domain(
+          genotypeSizes,
+          new DoubleRange(Arrays.stream(mins).min().orElse(0), Arrays.stream(maxs).max().orElse(0)),
+          new DoubleRange(Arrays.stream(mins).average().orElse(0), Arrays.stream(maxs).average().orElse(0))
+      );
+    }
+  }
+
+  private static Best best(CSVRecord record, boolean vsr, Filter filter) {
+    int iteration = Integer.parseInt(record.get(ITERATION_COLUMN));
+    int seed = Integer.parseInt(record.get(SEED_COLUMN));
+    if (!filter.accepts(iteration, seed)) {
+      return null;
+    }
+    String target;
+    if (!vsr) {
+      target = record.get(TARGET_COLUMN);
+    } else {
+      target = VSR_TARGET_TEMPLATE
+          .replace("%SHAPE%", record.get(SHAPE_COLUMN))
+          .replace("%FUNCTION%", record.get(FUNCTION_COLUMN))
+          .replaceFirst("free\\(s=([^)]*)\\)", "free(s=\"$1\")")
+          .replaceAll("\\s", "");
+    }
+    if (!filter.accepts(target)) {
+      return null;
+    }
+    return new Best(
+        target,
+        seed,
+        iteration,
+        GenotypeCodec.decodeToArray(record.get(GENOTYPE_COLUMN)),
+        Double.parseDouble(record.get(Q_COLUMN))
+    );
+  }
+
+  private static List<IndexEntry> buildIndex(Path path, int iterationColumn, int seedColumn) throws IOException {
+    List<IndexEntry> entries = new ArrayList<>();
+    try (InputStream is = new BufferedInputStream(Files.newInputStream(path), 1 << 16)) {
+      long position = 0;
+      long recordStart = 0;
+      int column = 0;
+      boolean quoted = false;
+      boolean header = true;
+      boolean empty = true;
+      StringBuilder iteration = new StringBuilder();
+      StringBuilder seed = new StringBuilder();
+      int b;
+      while (true) {
+        b = is.read();
+        if (b == '"') {
+          quoted = !quoted;
+        } else if (b == ';' && !quoted) {
+          column = column + 1;
+        } else if ((b == '\n' && !quoted) || b == -1) {
+          if (!header && !empty) {
+            entries.add(new IndexEntry(
+                Integer.parseInt(iteration.toString().trim()),
+                Integer.parseInt(seed.toString().trim()),
+                recordStart,
+                (int) (position - recordStart)
+            ));
+          }
+          if (b == -1) {
+            break;
+          }
+          header = false;
+          empty = true;
+          column = 0;
+          iteration.setLength(0);
+          seed.setLength(0);
+          recordStart = position + 1;
+        } else if (b != '\r') {
+          empty = false;
+          if (column == iterationColumn) {
+            iteration.append((char) b);
+          } else if (column == seedColumn) {
+            seed.append((char) b);
+          }
+        }
+        position = position + 1;
+      }
+    }
+    return entries;
+  }
+
+  public static SortedMap<String, Domain> domains(List<Best> bests) {
+    SortedMap<String, DomainAccumulator> accumulators = new TreeMap<>();
+    bests.forEach(b -> accumulators.computeIfAbsent(b.target(), t -> new DomainAccumulator()).add(b.genotype()));
+    SortedMap<String, Domain> domains = new TreeMap<>();
+    accumulators.forEach((t, a) -> domains.put(t, a.domain()));
+    return domains;
+  }
+
+  private static List<IndexEntry> index(Path path, List<String> headerNames) throws IOException {
+    Path indexPath = Path.of(path + ".index");
+    long size = Files.size(path);
+    long lastModified = Files.getLastModifiedTime(path).toMillis();
+    if (Files.exists(indexPath)) {
+      try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+        if (dis.readInt() == INDEX_MAGIC && dis.readInt() == INDEX_VERSION && dis.readLong() == size
+            && dis.readLong() == lastModified) {
+          int n = dis.readInt();
+          List<IndexEntry> entries = new ArrayList<>(n);
+          for (int i = 0; i < n; i = i + 1) {
+            entries.add(new IndexEntry(dis.readInt(), dis.readInt(), dis.readLong(), dis.readInt()));
+          }
+          L.info("Using index %s with %d rows".formatted(indexPath, n));
+          return entries;
+        }
+        L.info("Index %s is stale: rebuilding it".formatted(indexPath));
+      } catch (EOFException e) {
+        L.warning("Index %s is truncated: rebuilding it".formatted(indexPath));
+      }
+    }
+    List<IndexEntry> entries = buildIndex(
+        path,
+        headerNames.indexOf(ITERATION_COLUMN),
+        headerNames.indexOf(SEED_COLUMN)
+    );
+    try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexPath)))) {
+      dos.writeInt(INDEX_MAGIC);
+      dos.writeInt(INDEX_VERSION);
+      dos.writeLong(size);
+      dos.writeLong(lastModified);
+      dos.writeInt(entries.size());
+      for (IndexEntry entry : entries) {
+        dos.writeInt(entry.iteration());
+        dos.writeInt(entry.seed());
+        dos.writeLong(entry.offset());
+        dos.writeInt(entry.length());
+      }
+      L.info("Index %s built with %d rows".formatted(indexPath, entries.size()));
+    } catch (IOException e) {
+      L.warning("Cannot save index %s: %s".formatted(indexPath, e));
+    }
+    return entries;
+  }
+
+  public static List<Best> read(Path path, Filter filter, boolean useIndex) throws IOException {
+    List<Best> bests = new ArrayList<>();
+    long nOfRows = 0;
+    try (Reader reader = new BufferedReader(new FileReader(path.toFile(), StandardCharsets.UTF_8), 1 << 16)) {
+      CSVParser parser = CSVFormat.Builder.create().setDelimiter(';').setHeader().build().parse(reader);
+      List<String> headerNames = parser.getHeaderNames();
+      boolean vsr = !headerNames.contains(TARGET_COLUMN);
+      if (!useIndex) {
+        for (CSVRecord record : parser) {
+          nOfRows = nOfRows + 1;
+          Best best = best(record, vsr, filter);
+          if (best != null) {
+            bests.add(best);
+          }
+        }
+      } else {
+        List<IndexEntry> entries = index(path, headerNames);
+        nOfRows = entries.size();
+        CSVFormat format = CSVFormat.Builder.create()
+            .setDelimiter(';')
+            .setHeader(headerNames.toArray(String[]::new))
+            .build();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+          for (IndexEntry entry : entries) {
+            if (!filter.accepts(entry.iteration(), entry.seed())) {
+              continue;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(entry.length());
+            while (buffer.hasRemaining()) {
+              if (channel.read(buffer, entry.offset() + buffer.position()) < 0) {
+                throw new IOException("File %s is shorter than its index".formatted(path));
+              }
+            }
+            String line = new String(buffer.array(), StandardCharsets.UTF_8);
+            try (CSVParser lineParser = format.parse(new StringReader(line))) {
+              Best best = best(lineParser.iterator().next(), vsr, filter);
+              if (best != null) {
+                bests.add(best);
+              }
+            }
+          }
+        }
+      }
+    }
+    L.fine("%d rows of %d selected from %s".formatted(bests.size(), nOfRows, path));
+    return bests;
+  }
+}
@@ -0,0 +1,110 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Submits tasks to an executor keeping at most {@code maxInFlight} of them submitted but not yet consumed: when the
+ * cap is reached, {@link #submit(Callable)} blocks draining completed tasks. Results are passed to the consumer in
+ * completion order or, if {@code ordered}, in submission order through a reorder buffer which is bounded by the
+ * same cap. All the methods are meant to be invoked by a single (scheduling) thread, which is also the one invoking
+ * the consumer.
+ */
+public class BoundedScheduler<T> {
+
+  private final static Logger L = Logger.getLogger(BoundedScheduler.class.getName());
+
+  private final CompletionService<Numbered<T>> completionService;
+  private final int maxInFlight;
+  private final boolean ordered;
+  private final Consumer<T> consumer;
+  private final Map<Long, Numbered<T>> pending;
+  private long nOfSubmitted;
+  private long nOfConsumed;
+  private long nOfFailed;
+
+  public BoundedScheduler(Executor executor, int maxInFlight, boolean ordered, Consumer<T> consumer) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("Max number of in-flight tasks should be at least 1: got %d".formatted(
+          maxInFlight));
+    }
+    completionService = new ExecutorCompletionService<>(executor);
+    this.maxInFlight = maxInFlight;
+    this.ordered = ordered;
+    this.consumer = consumer;
+    pending = new HashMap<>();
+  }
+
+  private record Numbered<T>(long n, T t) {}
+
+  public void drain() {
+    while (inFlight() > 0) {
+      drainOne();
+    }
+  }
+
+  private void drainOne() {
+    Numbered<T> numbered;
+    try {
+      numbered = completionService.take().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for results", e);
+    } catch (ExecutionException e) {
+      //cannot happen, as failures are caught in the wrapping callable
+      throw new RuntimeException(e);
+    }
+    if (!ordered) {
+      consume(numbered);
+      return;
+    }
+    pending.put(numbered.n(), numbered);
+    while (pending.containsKey(nOfConsumed)) {
+      consume(pending.remove(nOfConsumed));
+    }
+  }
+
+  private void consume(Numbered<T> numbered) {
+    nOfConsumed = nOfConsumed + 1;
+    if (numbered.t() == null) {
+      nOfFailed = nOfFailed + 1;
+      return;
+    }
+    consumer.accept(numbered.t());
+  }
+
+  public long inFlight() {
+    return nOfSubmitted - nOfConsumed;
+  }
+
+  public long nOfConsumed() {
+    return nOfConsumed;
+  }
+
+  public long nOfFailed() {
+    return nOfFailed;
+  }
+
+  public long nOfSubmitted() {
+    return nOfSubmitted;
+  }
+
+  public void submit(Callable<T> callable) {
+    while (inFlight() >= maxInFlight) {
+      drainOne();
+    }
+    long n = nOfSubmitted;
+    nOfSubmitted = nOfSubmitted + 1;
+    completionService.submit(() -> {
+      try {
+        return new Numbered<>(n, callable.call());
+      } catch (Exception e) {
+        L.severe("Cannot get result due to: %s".formatted(e));
+        return new Numbered<>(n, null);
+      }
+    });
+  }
+}
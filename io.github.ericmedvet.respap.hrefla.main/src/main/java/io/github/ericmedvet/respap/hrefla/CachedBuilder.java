@@ -0,0 +1,137 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import io.github.ericmedvet.jgea.experimenter.InvertibleMapper;
+import io.github.ericmedvet.jnb.core.NamedBuilder;
+import io.github.ericmedvet.mrsim2d.core.EmbodiedAgent;
+import io.github.ericmedvet.mrsim2d.core.tasks.Task;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A {@link NamedBuilder} front-end which keeps the most recently built objects (mappers, tasks, cFunctions) keyed by
+ * their expression, so that an expression is parsed and built only once per run, as long as there are no more than
+ * {@code capacity} distinct expressions in use. Lookups take no lock and an expression is built outside any lock, by
+ * the first thread asking for it, while the other threads asking for the same expression wait for it; when there are
+ * more than {@code capacity} objects, the least recently used ones are evicted.
+ */
+public class CachedBuilder {
+
+  private final static String MAPPER_TEMPLATE = "er.m.parametrizedHomoBrains(target=%TARGET%)";
+
+  private final NamedBuilder<?> nb;
+  private final int capacity;
+  private final Map<String, Entry> cache;
+  private final AtomicLong clock;
+  private final LongAdder nOfHits;
+  private final LongAdder nOfMisses;
+
+  public CachedBuilder(NamedBuilder<?> nb, int capacity) {
+    this.nb = nb;
+    this.capacity = capacity;
+    cache = new ConcurrentHashMap<>();
+    clock = new AtomicLong();
+    nOfHits = new LongAdder();
+    nOfMisses = new LongAdder();
+  }
+
+  private static class Entry {
+    private final CompletableFuture<Object> built = new CompletableFuture<>();
+    private volatile long lastUse;
+  }
+
+  public Object build(String expression) {
+    return build(expression, "object");
+  }
+
+  private Object build(String expression, String kind) {
+    Entry newEntry = new Entry();
+    newEntry.lastUse = clock.incrementAndGet();
+    Entry entry = cache.putIfAbsent(expression, newEntry);
+    if (entry == null) {
+      nOfMisses.increment();
+      Events.Build event = new Events.Build();
+      event.begin();
+      try {
+        newEntry.built.complete(nb.build(expression));
+      } catch (Throwable e) {
+        //not kept, so that the build is tried again, and completed anyway, so that waiting threads do not hang
+        cache.remove(expression, newEntry);
+        newEntry.built.completeExceptionally(e);
+        throw e;
+      }
+      event.kind = kind;
+      event.expression = expression;
+      event.commit();
+      evict();
+      return newEntry.built.join();
+    }
+    nOfHits.increment();
+    entry.lastUse = clock.incrementAndGet();
+    try {
+      return entry.built.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      if (e.getCause() instanceof Error cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  private void evict() {
+    while (cache.size() > capacity) {
+      Map.Entry<String, Entry> eldest = null;
+      for (Map.Entry<String, Entry> entry : cache.entrySet()) {
+        if (eldest == null || entry.getValue().lastUse < eldest.getValue().lastUse) {
+          eldest = entry;
+        }
+      }
+      if (eldest == null) {
+        return;
+      }
+      cache.remove(eldest.getKey(), eldest.getValue());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  public Function<Object, Double> cFunction(String expression) {
+    return (Function<Object, Double>) build(expression, "cFunction");
+  }
+
+  @SuppressWarnings("unchecked")
+  public InvertibleMapper<List<Double>, Supplier<EmbodiedAgent>> mapper(String target) {
+    return (InvertibleMapper<List<Double>, Supplier<EmbodiedAgent>>) build(mapperExpression(target), "mapper");
+  }
+
+  public static String mapperExpression(String target) {
+    return MAPPER_TEMPLATE.replace("%TARGET%", target);
+  }
+
+  public long nOfHits() {
+    return nOfHits.sum();
+  }
+
+  public long nOfMisses() {
+    return nOfMisses.sum();
+  }
+
+  @SuppressWarnings("unchecked")
+  public Task<Supplier<EmbodiedAgent>, ?> task(String expression) {
+    return (Task<Supplier<EmbodiedAgent>, ?>) build(expression, "task");
+  }
+
+  @Override
+  public String toString() {
+    return "%d hits, %d misses, %d cached objects".formatted(nOfHits.sum(), nOfMisses.sum(), cache.size());
+  }
+}
@@ -0,0 +1,287 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Reads files written by {@link ColumnarRowSink}. Chunks are memory-mapped one at a time and only the segments of the
+ * requested columns are decoded. Files without footer are read by scanning the chunks, ignoring a truncated last one.
+ */
+public class ColumnarReader implements Closeable {
+
+  private final FileChannel channel;
+  private final List<RowSink.Column> columns;
+  private final Map<String, Integer> indexes;
+  private final List<Long> chunkOffsets;
+  private final List<List<String>> dictionaries;
+  private final long nOfRows;
+  private final long dataEnd;
+
+  public ColumnarReader(Path path) throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.READ);
+    long size = channel.size();
+    //read header
+    ByteBuffer bb = read(0, (int) Math.min(size, 1 << 16));
+    if (bb.remaining() < Long.BYTES + 2 * Integer.BYTES || bb.getLong() != ColumnarRowSink.MAGIC) {
+      channel.close();
+      throw new IOException("File %s is not a columnar file".formatted(path));
+    }
+    if (bb.getInt() != ColumnarRowSink.VERSION) {
+      channel.close();
+      throw new IOException("Unsupported version of columnar file %s".formatted(path));
+    }
+    int nOfColumns = bb.getInt();
+    List<RowSink.Column> localColumns = new ArrayList<>(nOfColumns);
+    indexes = new HashMap<>();
+    dictionaries = new ArrayList<>();
+    for (int i = 0; i < nOfColumns; i = i + 1) {
+      RowSink.Type type = RowSink.Type.values()[bb.get()];
+      String name = getString(bb);
+      localColumns.add(new RowSink.Column(name, type));
+      indexes.put(name, i);
+      dictionaries.add(new ArrayList<>());
+    }
+    columns = Collections.unmodifiableList(localColumns);
+    long headerEnd = bb.position();
+    chunkOffsets = new ArrayList<>();
+    //read footer, if any
+    long footerOffset = -1;
+    if (size >= headerEnd + Integer.BYTES + Long.BYTES) {
+      long candidate = read(size - Long.BYTES, Long.BYTES).getLong();
+      if (candidate >= headerEnd && candidate < size - Long.BYTES
+          && read(candidate, Integer.BYTES).getInt() == ColumnarRowSink.FOOTER_MARKER) {
+        footerOffset = candidate;
+      }
+    }
+    if (footerOffset >= 0) {
+      bb = read(footerOffset, (int) (size - footerOffset));
+      bb.getInt();
+      int nOfChunks = bb.getInt();
+      for (int i = 0; i < nOfChunks; i = i + 1) {
+        chunkOffsets.add(bb.getLong());
+      }
+      nOfRows = bb.getLong();
+      for (List<String> dictionary : dictionaries) {
+        int n = bb.getInt();
+        for (int i = 0; i < n; i = i + 1) {
+          dictionary.add(getString(bb));
+        }
+      }
+      dataEnd = footerOffset;
+    } else {
+      //scan chunks
+      long offset = headerEnd;
+      long rows = 0;
+      while (offset + 2 * Integer.BYTES <= size) {
+        ByteBuffer chunkHeader = read(offset, 2 * Integer.BYTES);
+        if (chunkHeader.getInt() != ColumnarRowSink.CHUNK_MARKER) {
+          break;
+        }
+        int n = chunkHeader.getInt();
+        long segmentOffset = offset + 2 * Integer.BYTES;
+        boolean complete = true;
+        List<List<String>> newEntries = new ArrayList<>();
+        for (RowSink.Column column : columns) {
+          if (segmentOffset + Integer.BYTES > size) {
+            complete = false;
+            break;
+          }
+          int segmentSize = read(segmentOffset, Integer.BYTES).getInt();
+          segmentOffset = segmentOffset + Integer.BYTES;
+          if (segmentOffset + segmentSize > size) {
+            complete = false;
+            break;
+          }
+          List<String> entries = new ArrayList<>();
+          if (column.type().equals(RowSink.Type.DICTIONARY)) {
+            ByteBuffer segment = read(segmentOffset, segmentSize);
+            int nOfEntries = segment.getInt();
+            for (int i = 0; i < nOfEntries; i = i + 1) {
+              entries.add(getString(segment));
+            }
+          }
+          newEntries.add(entries);
+          segmentOffset = segmentOffset + segmentSize;
+        }
+        if (!complete) {
+          break;
+        }
+        for (int i = 0; i < columns.size(); i = i + 1) {
+          dictionaries.get(i).addAll(newEntries.get(i));
+        }
+        chunkOffsets.add(offset);
+        rows = rows + n;
+        offset = segmentOffset;
+      }
+      nOfRows = rows;
+      dataEnd = offset;
+    }
+  }
+
+  public class Chunk {
+    private final int nOfRows;
+    private final Map<Integer, ByteBuffer> segments;
+    private final Map<Integer, int[]> stringOffsets;
+
+    private Chunk(int nOfRows, Map<Integer, ByteBuffer> segments) {
+      this.nOfRows = nOfRows;
+      this.segments = segments;
+      stringOffsets = new HashMap<>();
+    }
+
+    public Object get(String column, int row) {
+      return switch (columns.get(index(column)).type()) {
+        case INT -> getInt(column, row);
+        case DOUBLE -> getDouble(column, row);
+        case STRING, DICTIONARY -> getString(column, row);
+      };
+    }
+
+    public double getDouble(String column, int row) {
+      return segment(column).getDouble(row * Double.BYTES);
+    }
+
+    public int getInt(String column, int row) {
+      return segment(column).getInt(row * Integer.BYTES);
+    }
+
+    public String getString(String column, int row) {
+      int index = index(column);
+      ByteBuffer segment = segment(column);
+      if (columns.get(index).type().equals(RowSink.Type.DICTIONARY)) {
+        return dictionaries.get(index).get(segment.getInt(row * Integer.BYTES));
+      }
+      //strings are variable length, hence their offsets are found by a sequential scan, once per column
+      int[] offsets = stringOffsets.computeIfAbsent(index, i -> {
+        int[] localOffsets = new int[nOfRows];
+        int offset = 0;
+        for (int j = 0; j < nOfRows; j = j + 1) {
+          localOffsets[j] = offset;
+          offset = offset + Integer.BYTES + segment.getInt(offset);
+        }
+        return localOffsets;
+      });
+      return ColumnarReader.getString(segment.duplicate().order(ByteOrder.LITTLE_ENDIAN).position(offsets[row]));
+    }
+
+    public List<String> getStrings(String column) {
+      int index = index(column);
+      if (columns.get(index).type().equals(RowSink.Type.DICTIONARY)) {
+        ByteBuffer segment = segment(column);
+        List<String> strings = new ArrayList<>(nOfRows);
+        for (int i = 0; i < nOfRows; i = i + 1) {
+          strings.add(dictionaries.get(index).get(segment.getInt(i * Integer.BYTES)));
+        }
+        return strings;
+      }
+      ByteBuffer bb = segment(column).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      List<String> strings = new ArrayList<>(nOfRows);
+      for (int i = 0; i < nOfRows; i = i + 1) {
+        strings.add(ColumnarReader.getString(bb));
+      }
+      return strings;
+    }
+
+    public int nOfRows() {
+      return nOfRows;
+    }
+
+    private ByteBuffer segment(String column) {
+      ByteBuffer segment = segments.get(index(column));
+      if (segment == null) {
+        throw new IllegalArgumentException("Column %s has not been read".formatted(column));
+      }
+      return segment;
+    }
+  }
+
+  private static String getString(ByteBuffer bb) {
+    byte[] bytes = new byte[bb.getInt()];
+    bb.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  public Chunk chunk(int chunkIndex, Collection<String> columnNames) throws IOException {
+    long offset = chunkOffsets.get(chunkIndex);
+    long end = chunkIndex < chunkOffsets.size() - 1 ? chunkOffsets.get(chunkIndex + 1) : dataEnd;
+    MappedByteBuffer mbb = channel.map(FileChannel.MapMode.READ_ONLY, offset, end - offset);
+    mbb.order(ByteOrder.LITTLE_ENDIAN);
+    mbb.getInt();
+    int n = mbb.getInt();
+    Set<Integer> requested = new HashSet<>();
+    columnNames.forEach(c -> requested.add(index(c)));
+    Map<Integer, ByteBuffer> segments = new HashMap<>();
+    for (int i = 0; i < columns.size(); i = i + 1) {
+      int segmentSize = mbb.getInt();
+      if (requested.contains(i)) {
+        ByteBuffer segment = mbb.slice(mbb.position(), segmentSize).order(ByteOrder.LITTLE_ENDIAN);
+        if (columns.get(i).type().equals(RowSink.Type.DICTIONARY)) {
+          //skip the dictionary entries added by this chunk
+          int nOfEntries = segment.getInt();
+          for (int j = 0; j < nOfEntries; j = j + 1) {
+            segment.position(segment.position() + Integer.BYTES + segment.getInt(segment.position()));
+          }
+          segment = segment.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+        segments.put(i, segment);
+      }
+      mbb.position(mbb.position() + segmentSize);
+    }
+    return new Chunk(n, segments);
+  }
+
+  public List<Long> chunkOffsets() {
+    return Collections.unmodifiableList(chunkOffsets);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  public List<RowSink.Column> columns() {
+    return columns;
+  }
+
+  long dataEnd() {
+    return dataEnd;
+  }
+
+  public List<String> dictionary(String column) {
+    return Collections.unmodifiableList(dictionaries.get(index(column)));
+  }
+
+  private int index(String column) {
+    Integer index = indexes.get(column);
+    if (index == null) {
+      throw new IllegalArgumentException("Unknown column %s".formatted(column));
+    }
+    return index;
+  }
+
+  public int nOfChunks() {
+    return chunkOffsets.size();
+  }
+
+  public long nOfRows() {
+    return nOfRows;
+  }
+
+  private ByteBuffer read(long position, int length) throws IOException {
+    ByteBuffer bb = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (bb.hasRemaining()) {
+      if (channel.read(bb, position + bb.position()) < 0) {
+        break;
+      }
+    }
+    return bb.flip();
+  }
+}
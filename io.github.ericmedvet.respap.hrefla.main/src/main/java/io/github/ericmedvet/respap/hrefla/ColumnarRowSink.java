@@ -0,0 +1,246 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Writes rows in a chunked columnar binary format, all little-endian:
+ * <ul>
+ *   <li>header: magic, version, number of columns, and, for each column, type and name;</li>
+ *   <li>chunks: marker, number of rows, and, for each column, the length of its segment and the segment; a
+ *   {@link RowSink.Type#DICTIONARY} segment starts with the dictionary entries added by the chunk, followed by one
+ *   code per row;</li>
+ *   <li>footer, written on close: marker, chunk offsets, number of rows, the full dictionaries, and, as the last 8
+ *   bytes, the footer offset.</li>
+ * </ul>
+ * Chunks are self-contained with respect to the previous ones, hence a file without footer (e.g., after a crash) can
+ * still be read by scanning the chunks, and can be appended to. A chunk is written only when full or on close:
+ * {@link #flush()} makes durable, and commits, only the rows of the chunks already written, so that flushes do not
+ * make chunks smaller.
+ */
+public class ColumnarRowSink implements RowSink {
+
+  final static long MAGIC = 0x48524546434f4c31L;
+  final static int VERSION = 1;
+  final static int CHUNK_MARKER = 0x43484e4b;
+  final static int FOOTER_MARKER = 0x46545221;
+  private final static int CHUNK_SIZE = 4096;
+
+  private final List<Column> columns;
+  private final FileChannel channel;
+  private final List<Long> chunkOffsets;
+  private final List<List<String>> dictionaries;
+  private final List<Map<String, Integer>> codes;
+  private final List<List<Object>> pending;
+  private final int[] nOfPendingDictionaryEntries;
+  private final long nOfPreviousRows;
+  private long nOfRows;
+  private long nOfForcedRows;
+  private CommitListener commitListener;
+
+  public ColumnarRowSink(Path path, List<Column> columns, boolean append) throws IOException {
+    this.columns = columns;
+    chunkOffsets = new ArrayList<>();
+    dictionaries = new ArrayList<>();
+    codes = new ArrayList<>();
+    pending = new ArrayList<>();
+    for (int i = 0; i < columns.size(); i = i + 1) {
+      dictionaries.add(new ArrayList<>());
+      codes.add(new HashMap<>());
+      pending.add(new ArrayList<>(CHUNK_SIZE));
+    }
+    nOfPendingDictionaryEntries = new int[columns.size()];
+    if (append) {
+      long end;
+      try (ColumnarReader reader = new ColumnarReader(path)) {
+        if (!reader.columns().equals(columns)) {
+          throw new IOException("Cannot append to %s: columns %s differ from %s".formatted(
+              path,
+              reader.columns(),
+              columns
+          ));
+        }
+        for (int i = 0; i < columns.size(); i = i + 1) {
+          List<String> dictionary = reader.dictionary(columns.get(i).name());
+          for (String s : dictionary) {
+            codes.get(i).put(s, dictionaries.get(i).size());
+            dictionaries.get(i).add(s);
+          }
+        }
+        chunkOffsets.addAll(reader.chunkOffsets());
+        nOfRows = reader.nOfRows();
+        end = reader.dataEnd();
+      }
+      nOfPreviousRows = nOfRows;
+      nOfForcedRows = nOfRows;
+      channel = FileChannel.open(path, StandardOpenOption.WRITE);
+      channel.truncate(end);
+      channel.position(end);
+    } else {
+      nOfPreviousRows = 0;
+      channel = FileChannel.open(
+          path,
+          StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING
+      );
+      writeHeader();
+    }
+  }
+
+  private static void putString(ByteBuffer bb, String s) {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    bb.putInt(bytes.length);
+    bb.put(bytes);
+  }
+
+  private static int stringSize(String s) {
+    return Integer.BYTES + s.getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  @Override
+  public void close() throws IOException {
+    //the footer is not committed, as it is rewritten when appending
+    writeChunk();
+    flush();
+    long footerOffset = channel.position();
+    int size = 2 * Integer.BYTES + chunkOffsets.size() * Long.BYTES + Long.BYTES;
+    for (int i = 0; i < columns.size(); i = i + 1) {
+      size = size + Integer.BYTES + dictionaries.get(i).stream().mapToInt(ColumnarRowSink::stringSize).sum();
+    }
+    size = size + Long.BYTES;
+    ByteBuffer bb = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    bb.putInt(FOOTER_MARKER);
+    bb.putInt(chunkOffsets.size());
+    chunkOffsets.forEach(bb::putLong);
+    bb.putLong(nOfRows);
+    for (List<String> dictionary : dictionaries) {
+      bb.putInt(dictionary.size());
+      dictionary.forEach(s -> putString(bb, s));
+    }
+    bb.putLong(footerOffset);
+    write(bb.flip());
+    channel.force(true);
+    channel.close();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (nOfRows == nOfForcedRows) {
+      return;
+    }
+    channel.force(false);
+    nOfForcedRows = nOfRows;
+    if (commitListener != null) {
+      commitListener.committed(nOfRows - nOfPreviousRows, channel.position());
+    }
+  }
+
+  @Override
+  public void onCommit(CommitListener listener) {
+    commitListener = listener;
+  }
+
+  private void write(ByteBuffer bb) throws IOException {
+    while (bb.hasRemaining()) {
+      channel.write(bb);
+    }
+  }
+
+  @Override
+  public void write(List<?> values) throws IOException {
+    Events.OutputWrite event = new Events.OutputWrite();
+    event.begin();
+    if (values.size() != columns.size()) {
+      throw new IllegalArgumentException("Wrong number of values: %d instead of %d".formatted(
+          values.size(),
+          columns.size()
+      ));
+    }
+    for (int i = 0; i < columns.size(); i = i + 1) {
+      Object value = values.get(i);
+      if (columns.get(i).type().equals(Type.DICTIONARY)) {
+        String s = value.toString();
+        Integer code = codes.get(i).get(s);
+        if (code == null) {
+          code = dictionaries.get(i).size();
+          codes.get(i).put(s, code);
+          dictionaries.get(i).add(s);
+          nOfPendingDictionaryEntries[i] = nOfPendingDictionaryEntries[i] + 1;
+        }
+        value = code;
+      }
+      pending.get(i).add(value);
+    }
+    if (pending.get(0).size() >= CHUNK_SIZE) {
+      writeChunk();
+    }
+    event.format = Format.COLUMNAR.name();
+    event.nOfValues = values.size();
+    event.commit();
+  }
+
+  private void writeChunk() throws IOException {
+    int n = pending.get(0).size();
+    if (n == 0) {
+      return;
+    }
+    int[] segmentSizes = new int[columns.size()];
+    for (int i = 0; i < columns.size(); i = i + 1) {
+      segmentSizes[i] = switch (columns.get(i).type()) {
+        case INT -> n * Integer.BYTES;
+        case DOUBLE -> n * Double.BYTES;
+        case STRING -> pending.get(i).stream().mapToInt(v -> stringSize(v.toString())).sum();
+        case DICTIONARY -> Integer.BYTES + dictionaries.get(i)
+            .subList(dictionaries.get(i).size() - nOfPendingDictionaryEntries[i], dictionaries.get(i).size())
+            .stream()
+            .mapToInt(ColumnarRowSink::stringSize)
+            .sum() + n * Integer.BYTES;
+      };
+    }
+    ByteBuffer bb = ByteBuffer.allocate(2 * Integer.BYTES + Arrays.stream(segmentSizes).map(s -> s + Integer.BYTES).sum())
+        .order(ByteOrder.LITTLE_ENDIAN);
+    bb.putInt(CHUNK_MARKER);
+    bb.putInt(n);
+    for (int i = 0; i < columns.size(); i = i + 1) {
+      bb.putInt(segmentSizes[i]);
+      List<Object> values = pending.get(i);
+      switch (columns.get(i).type()) {
+        case INT -> values.forEach(v -> bb.putInt(((Number) v).intValue()));
+        case DOUBLE -> values.forEach(v -> bb.putDouble(((Number) v).doubleValue()));
+        case STRING -> values.forEach(v -> putString(bb, v.toString()));
+        case DICTIONARY -> {
+          List<String> dictionary = dictionaries.get(i);
+          bb.putInt(nOfPendingDictionaryEntries[i]);
+          dictionary.subList(dictionary.size() - nOfPendingDictionaryEntries[i], dictionary.size())
+              .forEach(s -> putString(bb, s));
+          values.forEach(v -> bb.putInt((Integer) v));
+          nOfPendingDictionaryEntries[i] = 0;
+        }
+      }
+      values.clear();
+    }
+    chunkOffsets.add(channel.position());
+    write(bb.flip());
+    nOfRows = nOfRows + n;
+  }
+
+  private void writeHeader() throws IOException {
+    int size = Long.BYTES + 2 * Integer.BYTES + columns.stream().mapToInt(c -> 1 + stringSize(c.name())).sum();
+    ByteBuffer bb = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    bb.putLong(MAGIC);
+    bb.putInt(VERSION);
+    bb.putInt(columns.size());
+    columns.forEach(c -> {
+      bb.put((byte) c.type().ordinal());
+      putString(bb, c.name());
+    });
+    write(bb.flip());
+  }
+}
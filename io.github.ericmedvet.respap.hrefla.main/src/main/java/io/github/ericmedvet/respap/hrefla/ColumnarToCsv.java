@@ -0,0 +1,94 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Converts a columnar output file to the {@code ;}-separated CSV layout, possibly with a subset of the columns.
+ */
+public class ColumnarToCsv implements Runnable {
+
+  private final static Logger L = Logger.getLogger(ColumnarToCsv.class.getName());
+
+  @Parameter(
+      names = {"--inputFile", "-if"},
+      description = "Path of the columnar input file"
+  )
+  public String inputFile = "";
+  @Parameter(
+      names = {"--outputFile", "-of"},
+      description = "Path of the CSV output file"
+  )
+  public String outputFile = "";
+  @Parameter(
+      names = {"--columns", "-c"},
+      description = "Names of the columns to be exported; all if empty"
+  )
+  public List<String> columns = List.of();
+
+  public static void main(String[] args) {
+    try {
+      ColumnarToCsv columnarToCsv = new ColumnarToCsv();
+      JCommander.newBuilder()
+          .addObject(columnarToCsv)
+          .build()
+          .parse(args);
+      columnarToCsv.run();
+    } catch (ParameterException e) {
+      e.usage();
+      L.severe(String.format("Cannot read command line options: %s", e));
+      System.exit(-1);
+    } catch (RuntimeException e) {
+      L.severe(e.getClass().getSimpleName() + ": " + e.getMessage());
+      System.exit(-1);
+    }
+  }
+
+  @Override
+  public void run() {
+    try (
+        ColumnarReader reader = new ColumnarReader(Path.of(inputFile));
+        CSVPrinter printer = new CSVPrinter(
+            new PrintStream(outputFile),
+            CSVFormat.Builder.create().setDelimiter(";").build()
+        )
+    ) {
+      List<String> names = columns.isEmpty() ? reader.columns().stream().map(RowSink.Column::name).toList() : columns;
+      L.info("Converting %d rows in %d chunks".formatted(reader.nOfRows(), reader.nOfChunks()));
+      printer.printRecord(names);
+      for (int i = 0; i < reader.nOfChunks(); i = i + 1) {
+        ColumnarReader.Chunk chunk = reader.chunk(i, names);
+        List<List<?>> values = new ArrayList<>();
+        for (String name : names) {
+          values.add(switch (reader.columns().stream()
+              .filter(c -> c.name().equals(name))
+              .findFirst()
+              .orElseThrow()
+              .type()) {
+            case STRING, DICTIONARY -> chunk.getStrings(name);
+            default -> null;
+          });
+        }
+        for (int r = 0; r < chunk.nOfRows(); r = r + 1) {
+          List<Object> row = new ArrayList<>(names.size());
+          for (int c = 0; c < names.size(); c = c + 1) {
+            row.add(values.get(c) == null ? chunk.get(names.get(c), r) : values.get(c).get(r));
+          }
+          printer.printRecord(row);
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Cannot convert %s to %s: %s".formatted(inputFile, outputFile, e));
+    }
+  }
+}
@@ -0,0 +1,293 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Hands the simulations to remote {@link Worker}s connected through TCP. Each call to the
+ * {@link Evaluator.Simulator} of a task enqueues a work item and waits for its result. Workers ask for leases of work
+ * items and reply with the result of each item as soon as it is done, and with heartbeats while none is done; if a
+ * worker is lost (connection closed or silent for more than the timeout), the items of its current lease which are
+ * not done are put back at the head of the queue and leased to the other workers.
+ * <p>
+ * The protocol is made of big-endian messages, with strings encoded as length-prefixed UTF-8:
+ * <ul>
+ *   <li>on connection, the coordinator sends magic, version, number of cFunctions, cFunctions, and the timeout in
+ *   milliseconds;</li>
+ *   <li>the worker sends the max number {@code n} of items it wants;</li>
+ *   <li>the coordinator sends a lease of {@code k>0} items, each with id, target, task, and genotype, where target
+ *   and task are sent as an id followed, if not sent before on this connection, by the string itself; {@code k=0}
+ *   means that the worker should stop;</li>
+ *   <li>the worker sends {@code k} results, in order of completion, each with the {@link #RESULT} byte, id, success
+ *   flag, and number of fitness values and fitness values (one for each cFunction) or error message; between them,
+ *   it sends the {@link #HEARTBEAT} byte at least every {@link #heartbeatMillis(int)} milliseconds.</li>
+ * </ul>
+ */
+public class Coordinator implements AutoCloseable {
+
+  final static int MAGIC = 0x48524543;
+  final static int VERSION = 4;
+  final static byte HEARTBEAT = 0;
+  final static byte RESULT = 1;
+  private final static Logger L = Logger.getLogger(Coordinator.class.getName());
+  private final static long POLL_MILLIS = 1000;
+
+  private final List<String> cFunctions;
+  private final int timeoutMillis;
+  private final ServerSocket serverSocket;
+  private final BlockingDeque<WorkItem> queue;
+  private final Map<String, Integer> stringIds;
+  private final AtomicInteger nOfStrings;
+  private final Set<Socket> sockets;
+  private final AtomicLong nOfItems;
+  private final AtomicLong nOfLeases;
+  private final AtomicLong nOfRequeued;
+  private final AtomicInteger nOfWorkers;
+  private volatile boolean closed;
+
+  public Coordinator(int port, List<String> cFunctions, int timeoutMillis) throws IOException {
+    this.cFunctions = cFunctions;
+    this.timeoutMillis = timeoutMillis;
+    serverSocket = new ServerSocket(port);
+    queue = new LinkedBlockingDeque<>();
+    stringIds = new ConcurrentHashMap<>();
+    nOfStrings = new AtomicInteger();
+    sockets = ConcurrentHashMap.newKeySet();
+    nOfItems = new AtomicLong();
+    nOfLeases = new AtomicLong();
+    nOfRequeued = new AtomicLong();
+    nOfWorkers = new AtomicInteger();
+    Thread acceptor = new Thread(this::accept, "coordinator-acceptor");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    L.info("Coordinator listening on port %d".formatted(serverSocket.getLocalPort()));
+  }
+
+  private record WorkItem(
+      long id,
+      String target,
+      String task,
+      double[] genotype,
+      CompletableFuture<double[]> result
+  ) {}
+
+  static int heartbeatMillis(int timeoutMillis) {
+    return Math.max(1, timeoutMillis / 4);
+  }
+
+  static String readString(DataInput in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  static String readString(DataInput in, Map<Integer, String> received) throws IOException {
+    int id = in.readInt();
+    if (in.readBoolean()) {
+      received.put(id, readString(in));
+    }
+    return received.get(id);
+  }
+
+  private void writeString(DataOutput out, String s, Set<Integer> sentIds) throws IOException {
+    int id = stringIds.computeIfAbsent(s, k -> nOfStrings.getAndIncrement());
+    out.writeInt(id);
+    boolean isNew = sentIds.add(id);
+    out.writeBoolean(isNew);
+    if (isNew) {
+      writeString(out, s);
+    }
+  }
+
+  static void writeString(DataOutput out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private void accept() {
+    while (!closed) {
+      try {
+        Socket socket = serverSocket.accept();
+        Thread handler = new Thread(() -> serve(socket), "coordinator-" + socket.getRemoteSocketAddress());
+        handler.setDaemon(true);
+        handler.start();
+      } catch (IOException e) {
+        if (!closed) {
+          L.warning("Cannot accept worker connection: %s".formatted(e));
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    serverSocket.close();
+    //wait for the handlers to tell their workers to stop
+    long deadline = System.currentTimeMillis() + 2 * POLL_MILLIS;
+    while (!sockets.isEmpty() && System.currentTimeMillis() < deadline) {
+      try {
+        Thread.sleep(10);
+      } catch (InterruptedException e) {
+        break;
+      }
+    }
+    for (Socket socket : sockets) {
+      socket.close();
+    }
+    WorkItem item;
+    while ((item = queue.poll()) != null) {
+      item.result().completeExceptionally(new IllegalStateException("Coordinator closed"));
+    }
+  }
+
+  public int port() {
+    return serverSocket.getLocalPort();
+  }
+
+  private void serve(Socket socket) {
+    String worker = socket.getRemoteSocketAddress().toString();
+    sockets.add(socket);
+    L.info("Worker %s connected: %d workers".formatted(worker, nOfWorkers.incrementAndGet()));
+    List<WorkItem> lease = new ArrayList<>();
+    try (socket) {
+      socket.setSoTimeout(timeoutMillis);
+      socket.setTcpNoDelay(true);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(cFunctions.size());
+      for (String cFunction : cFunctions) {
+        writeString(out, cFunction);
+      }
+      out.writeInt(timeoutMillis);
+      out.flush();
+      Set<Integer> sentStringIds = new HashSet<>();
+      while (true) {
+        int n = in.readInt();
+        //wait for at least one item, then take what is available up to n
+        WorkItem first = null;
+        while (first == null && !closed) {
+          first = queue.pollFirst(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        if (first == null) {
+          out.writeInt(0);
+          out.flush();
+          break;
+        }
+        lease.add(first);
+        while (lease.size() < n) {
+          WorkItem item = queue.pollFirst();
+          if (item == null) {
+            break;
+          }
+          lease.add(item);
+        }
+        nOfLeases.incrementAndGet();
+        out.writeInt(lease.size());
+        for (WorkItem item : lease) {
+          out.writeLong(item.id());
+          writeString(out, item.target(), sentStringIds);
+          writeString(out, item.task(), sentStringIds);
+          out.writeInt(item.genotype().length);
+          for (double v : item.genotype()) {
+            out.writeDouble(v);
+          }
+        }
+        out.flush();
+        //the timeout of the socket applies to each read, hence to the silence of the worker
+        Map<Long, WorkItem> leased = new HashMap<>();
+        lease.forEach(item -> leased.put(item.id(), item));
+        int nOfResults = 0;
+        while (nOfResults < lease.size()) {
+          byte type = in.readByte();
+          if (type == HEARTBEAT) {
+            continue;
+          }
+          if (type != RESULT) {
+            throw new IOException("Unexpected message type %d".formatted(type));
+          }
+          nOfResults = nOfResults + 1;
+          long id = in.readLong();
+          boolean ok = in.readBoolean();
+          WorkItem item = leased.remove(id);
+          if (ok) {
+            double[] qs = new double[in.readInt()];
+            for (int j = 0; j < qs.length; j = j + 1) {
+              qs[j] = in.readDouble();
+            }
+            if (item != null) {
+              item.result().complete(qs);
+            }
+          } else {
+            String message = readString(in);
+            if (item != null) {
+              item.result().completeExceptionally(new RuntimeException("Worker %s failed: %s".formatted(
+                  worker,
+                  message
+              )));
+            }
+          }
+        }
+        if (!leased.isEmpty()) {
+          throw new IOException("%d results missing".formatted(leased.size()));
+        }
+        lease.clear();
+      }
+    } catch (IOException | InterruptedException e) {
+      if (!closed || !(e instanceof SocketException)) {
+        L.warning("Worker %s lost: %s".formatted(worker, e));
+      }
+    } finally {
+      sockets.remove(socket);
+      //give back the items of the current lease
+      for (int i = lease.size() - 1; i >= 0; i = i - 1) {
+        if (!lease.get(i).result().isDone()) {
+          queue.addFirst(lease.get(i));
+          nOfRequeued.incrementAndGet();
+        }
+      }
+      L.info("Worker %s disconnected: %d workers".formatted(worker, nOfWorkers.decrementAndGet()));
+    }
+  }
+
+  private double[] simulate(String target, String task, double[] genotype) {
+    if (closed) {
+      throw new IllegalStateException("Coordinator closed");
+    }
+    WorkItem item = new WorkItem(nOfItems.getAndIncrement(), target, task, genotype, new CompletableFuture<>());
+    queue.addLast(item);
+    try {
+      return item.result().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+    }
+  }
+
+  public Evaluator.Simulator simulator(String task) {
+    return (target, genotype) -> simulate(target, task, genotype);
+  }
+
+  @Override
+  public String toString() {
+    return "%d items in %d leases, %d requeued, %d workers".formatted(
+        nOfItems.get(),
+        nOfLeases.get(),
+        nOfRequeued.get(),
+        nOfWorkers.get()
+    );
+  }
+}
@@ -0,0 +1,108 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes rows as {@code ;}-separated values, with a header line unless appending. Rows are encoded in memory and
+ * written to the file in large blocks, hence the file is up to date only after {@link #flush()} or
+ * {@link #close()}, which both force the file to disk and then notify the commit listener.
+ */
+public class CsvRowSink implements RowSink {
+
+  private final static int BUFFER_SIZE = 1 << 20;
+
+  private final FileChannel channel;
+  private final StringBuilder text;
+  private final CSVPrinter printer;
+  private final CharsetEncoder encoder;
+  private final ByteBuffer buffer;
+  private CommitListener commitListener;
+  private long nOfRows;
+
+  public CsvRowSink(Path path, List<Column> columns, boolean append) throws IOException {
+    channel = append ? FileChannel.open(
+        path,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE,
+        StandardOpenOption.APPEND
+    ) : FileChannel.open(
+        path,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING
+    );
+    text = new StringBuilder();
+    printer = new CSVPrinter(text, CSVFormat.Builder.create().setDelimiter(";").build());
+    encoder = StandardCharsets.UTF_8.newEncoder();
+    buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    if (!append) {
+      printer.printRecord(columns.stream().map(Column::name).toList());
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+    channel.close();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    writeText();
+    channel.force(false);
+    if (commitListener != null) {
+      commitListener.committed(nOfRows, channel.size());
+    }
+  }
+
+  @Override
+  public void onCommit(CommitListener listener) {
+    commitListener = listener;
+  }
+
+  @Override
+  public void write(List<?> values) throws IOException {
+    Events.OutputWrite event = new Events.OutputWrite();
+    event.begin();
+    printer.printRecord(values);
+    nOfRows = nOfRows + 1;
+    if (text.length() >= BUFFER_SIZE / 4) {
+      writeText();
+    }
+    event.format = Format.CSV.name();
+    event.nOfValues = values.size();
+    event.commit();
+  }
+
+  private void writeText() throws IOException {
+    CharBuffer chars = CharBuffer.wrap(text);
+    while (true) {
+      CoderResult result = encoder.encode(chars, buffer, true);
+      if (result.isError()) {
+        result.throwException();
+      }
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+      if (result.isUnderflow()) {
+        break;
+      }
+    }
+    encoder.reset();
+    text.setLength(0);
+  }
+}
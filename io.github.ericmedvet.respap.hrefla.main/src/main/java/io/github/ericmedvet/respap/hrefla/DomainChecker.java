@@ -3,7 +3,6 @@ package io.github.ericmedvet.respap.hrefla;
 import io.github.ericmedvet.jgea.core.IndependentFactory;
 import io.github.ericmedvet.jgea.core.representation.sequence.FixedLengthListFactory;
 import io.github.ericmedvet.jgea.experimenter.InvertibleMapper;
-import io.github.ericmedvet.jnb.core.NamedBuilder;
 import io.github.ericmedvet.mrsim2d.core.EmbodiedAgent;
 import io.github.ericmedvet.mrsim2d.core.engine.Engine;
 import io.github.ericmedvet.mrsim2d.core.tasks.Task;
@@ -12,7 +11,6 @@ import io.github.ericmedvet.robotevo2d.main.PreparedNamedBuilder;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
-import java.util.ServiceLoader;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.random.RandomGenerator;
@@ -22,7 +20,7 @@ import java.util.random.RandomGenerator;
  */
 public class DomainChecker {
 
-  private final static String VSR_OPEN_MAPPER = """
+  public final static String VSR_OPEN_MAPPER = """
       s.a.centralizedNumGridVSR(
         body = s.a.vsr.gridBody(
           sensorizingFunction = s.a.vsr.sf.directional(
@@ -41,7 +39,7 @@ public class DomainChecker {
       )
       """;
 
-  private final static String VSR_CLOSED_MAPPER = """
+  public final static String VSR_CLOSED_MAPPER = """
       s.a.centralizedNumGridVSR(
         body = s.a.vsr.gridBody(
           sensorizingFunction = s.a.vsr.sf.directional(
@@ -55,7 +53,7 @@ public class DomainChecker {
       )
       """;
 
-  private final static String LEGGED_OPEN_MAPPER = """
+  public final static String LEGGED_OPEN_MAPPER = """
       s.a.numLeggedHybridRobot(
         trunkLength = 35;
         trunkMass = 1;
@@ -77,7 +75,7 @@ public class DomainChecker {
       )
       """;
 
-  private final static String LEGGED_OPEN_2_MAPPER = """
+  public final static String LEGGED_OPEN_2_MAPPER = """
       s.a.numLeggedHybridRobot(
         trunkLength = 10;
         trunkMass = 1;
@@ -98,21 +96,26 @@ public class DomainChecker {
 
   private final static String TASK = "s.task.locomotion(terrain = s.t.flat())";
   private final static String C_FUNCTION = "s.task.locomotion.xVelocity()";
-  private final static String MAPPER_TEMPLATE = "er.m.parametrizedHomoBrains(target=%TARGET%)";
+
+  public static boolean isDeterministic(
+      Function<List<Double>, Supplier<EmbodiedAgent>> mapper,
+      Task<Supplier<EmbodiedAgent>, ?> task,
+      Function<Object, Double> cFunction,
+      Supplier<Engine> engineSupplier,
+      List<Double> genotype
+  ) {
+    double q1 = cFunction.apply(task.run(mapper.apply(genotype), engineSupplier.get()));
+    double q2 = cFunction.apply(task.run(mapper.apply(genotype), engineSupplier.get()));
+    return Double.doubleToLongBits(q1) == Double.doubleToLongBits(q2);
+  }
 
   public static void main(String[] args) {
-    NamedBuilder<?> nb = PreparedNamedBuilder.get();
-    Supplier<Engine> engineSupplier = () -> ServiceLoader.load(Engine.class)
-        .findFirst()
-        .orElseThrow(() -> new RuntimeException("Cannot instantiate an engine"));
-    @SuppressWarnings("unchecked") Function<Object, Double> cFunction = (Function<Object, Double>) nb.build(C_FUNCTION);
-    @SuppressWarnings("unchecked") Task<Supplier<EmbodiedAgent>, ?> task =
-        (Task<Supplier<EmbodiedAgent>, ?>) nb.build(
-            TASK);
+    CachedBuilder builder = new CachedBuilder(PreparedNamedBuilder.get(), 10);
+    EngineFactory engineFactory = EngineFactory.fromServiceLoader();
+    Function<Object, Double> cFunction = builder.cFunction(C_FUNCTION);
+    Task<Supplier<EmbodiedAgent>, ?> task = builder.task(TASK);
     RandomGenerator randomGenerator = new Random(1);
-    @SuppressWarnings("unchecked") InvertibleMapper<List<Double>, Supplier<EmbodiedAgent>> mapper =
-        (InvertibleMapper<List<Double>, Supplier<EmbodiedAgent>>) nb.build(
-            MAPPER_TEMPLATE.replace("%TARGET%", LEGGED_OPEN_2_MAPPER));
+    InvertibleMapper<List<Double>, Supplier<EmbodiedAgent>> mapper = builder.mapper(LEGGED_OPEN_2_MAPPER);
     IndependentFactory<List<Double>> factory = new FixedLengthListFactory<>(
         mapper.exampleInput().size(),
         r -> r.nextDouble(-1, 1)
@@ -122,9 +125,27 @@ public class DomainChecker {
     g1.set(1, 1d);
     List<Double> g2 = new ArrayList<>(g1);
     g1.set(1, 1.1d);
-    System.out.println(cFunction.apply(task.run(mapper.apply(g1), engineSupplier.get())));
-    System.out.println(cFunction.apply(task.run(mapper.apply(g1), engineSupplier.get())));
-    System.out.println(cFunction.apply(task.run(mapper.apply(g2), engineSupplier.get())));
-    System.out.println(cFunction.apply(task.run(mapper.apply(g2), engineSupplier.get())));
+    System.out.println(cFunction.apply(task.run(mapper.apply(g1), engineFactory.get())));
+    System.out.println(cFunction.apply(task.run(mapper.apply(g1), engineFactory.get())));
+    System.out.println(cFunction.apply(task.run(mapper.apply(g2), engineFactory.get())));
+    System.out.printf("Deterministic: %s%n", isDeterministic(mapper, task, cFunction, engineFactory, g1));
+    System.out.println(cFunction.apply(task.run(mapper.apply(g2), engineFactory.get())));
+    System.out.printf("Deterministic: %s%n", isDeterministic(mapper, task, cFunction, engineFactory, g1));
+    //compare engine creation overhead
+    int n = 100;
+    long startingT = System.nanoTime();
+    for (int i = 0; i < n; i = i + 1) {
+      EngineFactory.lookup();
+    }
+    double lookupMillis = (double) (System.nanoTime() - startingT) / (double) n / 1e6;
+    for (int i = 0; i < n; i = i + 1) {
+      engineFactory.get();
+    }
+    System.out.printf(
+        "Engine creation: %.3f ms with lookup, %.3f ms with factory (%s)%n",
+        lookupMillis,
+        engineFactory.meanCreationMillis(),
+        engineFactory
+    );
   }
 }
@@ -0,0 +1,61 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import io.github.ericmedvet.mrsim2d.core.engine.Engine;
+
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Builds the engines of the simulations. The engine provider is looked up once, rather than by scanning the service
+ * loader at each simulation, and a fresh engine is built by it for each simulation: engines are not reused, since
+ * they cannot be reset to their initial state.
+ */
+public class EngineFactory implements Supplier<Engine> {
+
+  private final Supplier<Engine> provider;
+  private final AtomicLong nOfCreations;
+  private final AtomicLong creationNanos;
+
+  public EngineFactory(Supplier<Engine> provider) {
+    this.provider = provider;
+    nOfCreations = new AtomicLong();
+    creationNanos = new AtomicLong();
+  }
+
+  public static EngineFactory fromServiceLoader() {
+    ServiceLoader.Provider<Engine> provider = ServiceLoader.load(Engine.class)
+        .stream()
+        .findFirst()
+        .orElseThrow(() -> new RuntimeException("Cannot instantiate an engine"));
+    return new EngineFactory(provider::get);
+  }
+
+  public static Engine lookup() {
+    return ServiceLoader.load(Engine.class)
+        .findFirst()
+        .orElseThrow(() -> new RuntimeException("Cannot instantiate an engine"));
+  }
+
+  @Override
+  public Engine get() {
+    long startingT = System.nanoTime();
+    Engine engine = provider.get();
+    creationNanos.addAndGet(System.nanoTime() - startingT);
+    nOfCreations.incrementAndGet();
+    return engine;
+  }
+
+  public double meanCreationMillis() {
+    long n = nOfCreations.get();
+    return n == 0 ? Double.NaN : (double) creationNanos.get() / (double) n / 1e6;
+  }
+
+  @Override
+  public String toString() {
+    return "%d engines created, %.3f ms per creation".formatted(
+        nOfCreations.get(),
+        meanCreationMillis()
+    );
+  }
+}
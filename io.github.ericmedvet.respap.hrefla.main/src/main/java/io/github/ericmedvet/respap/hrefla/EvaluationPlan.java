@@ -0,0 +1,71 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * A plan of the evaluations of (a part of) a run, compiled from its rows before its evaluations are submitted. If
+ * {@code deduplicate} is true, rows whose points are bit-identical, with the same target, are collapsed in a single
+ * evaluation, whose outcome fans out to all of them: points are compared through their
+ * {@link FitnessCache#key(String, String, String, double[])}. Otherwise, each row has its own evaluation, hence the
+ * evaluations keep the order of the rows. Genotypes are not kept: they are computed once when rows are added, for
+ * detecting duplicates, and again when evaluated, hence their suppliers have to be deterministic.
+ */
+public class EvaluationPlan<R> {
+
+  private final String task;
+  private final String cFunction;
+  private final boolean deduplicate;
+  private final List<Evaluation<R>> evaluations;
+  private final Map<FitnessCache.Key, Evaluation<R>> keyedEvaluations;
+  private int nOfRows;
+
+  public EvaluationPlan(String task, String cFunction, boolean deduplicate) {
+    this.task = task;
+    this.cFunction = cFunction;
+    this.deduplicate = deduplicate;
+    evaluations = new ArrayList<>();
+    keyedEvaluations = new HashMap<>();
+  }
+
+  public record Evaluation<R>(String target, Supplier<double[]> genotype, List<R> rows) {}
+
+  public void add(String target, Supplier<double[]> genotype, R row) {
+    nOfRows = nOfRows + 1;
+    if (deduplicate) {
+      //all the evaluations of a target in a plan are repeated the same number of times
+      FitnessCache.Key key = FitnessCache.key(target, task, cFunction, 1, genotype.get());
+      Evaluation<R> evaluation = keyedEvaluations.get(key);
+      if (evaluation != null) {
+        evaluation.rows().add(row);
+        return;
+      }
+      evaluation = new Evaluation<>(target, genotype, new ArrayList<>(List.of(row)));
+      keyedEvaluations.put(key, evaluation);
+      evaluations.add(evaluation);
+      return;
+    }
+    evaluations.add(new Evaluation<>(target, genotype, List.of(row)));
+  }
+
+  public List<Evaluation<R>> evaluations() {
+    return List.copyOf(evaluations);
+  }
+
+  public int nOfEvaluations() {
+    return evaluations.size();
+  }
+
+  public int nOfRows() {
+    return nOfRows;
+  }
+
+  @Override
+  public String toString() {
+    return "%d rows in %d evaluations (%d duplicates collapsed)".formatted(
+        nOfRows,
+        evaluations.size(),
+        nOfRows - evaluations.size()
+    );
+  }
+}
@@ -0,0 +1,207 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import io.github.ericmedvet.mrsim2d.core.EmbodiedAgent;
+import io.github.ericmedvet.mrsim2d.core.engine.Engine;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Computes the fitness of a genotype for a target on a task through a {@link Simulator}, which runs the task either
+ * locally or remotely, once for all the cFunctions: {@link #evaluate(String, double[])} gives the fitness according
+ * to the first cFunction. If a {@link FitnessCache} is given, it is used only for the targets for which the evaluation
+ * is deterministic, as assessed on the first few genotypes evaluated for the target by simulating each twice: the
+ * checks do not block the evaluations of other genotypes and their outcomes are the fitness of the genotypes. If a
+ * {@link NoiseProfile} is given, the fitness is the mean over as many simulations as the profile requires for the
+ * target on the task. If a cost recorder is given, it receives the time spent simulating each genotype which is
+ * actually simulated, over all its simulations, but not the one of fitness cache hits.
+ */
+public class Evaluator {
+
+  private final static Logger L = Logger.getLogger(Evaluator.class.getName());
+  private final static int N_OF_DETERMINISM_CHECKS = 3;
+
+  private final Simulator simulator;
+  private final String task;
+  private final List<String> cFunctions;
+  private final FitnessCache fitnessCache;
+  private final NoiseProfile noiseProfile;
+  private final ObjLongConsumer<String> costRecorder;
+  private final Map<String, Boolean> deterministicTargets;
+  private final Map<String, Integer> targetChecks;
+  private final Map<String, Integer> targetRepeats;
+
+  public Evaluator(
+      Simulator simulator,
+      String task,
+      List<String> cFunctions,
+      FitnessCache fitnessCache,
+      NoiseProfile noiseProfile,
+      ObjLongConsumer<String> costRecorder
+  ) {
+    this.simulator = simulator;
+    this.task = task;
+    this.cFunctions = cFunctions;
+    this.fitnessCache = fitnessCache;
+    this.noiseProfile = noiseProfile;
+    this.costRecorder = costRecorder;
+    deterministicTargets = new ConcurrentHashMap<>();
+    targetChecks = new ConcurrentHashMap<>();
+    targetRepeats = new ConcurrentHashMap<>();
+  }
+
+  public Evaluator(Simulator simulator, String task, List<String> cFunctions, FitnessCache fitnessCache) {
+    this(simulator, task, cFunctions, fitnessCache, null, null);
+  }
+
+  public Evaluator(
+      CachedBuilder builder,
+      Supplier<Engine> engineSupplier,
+      String task,
+      String cFunction,
+      FitnessCache fitnessCache
+  ) {
+    this(local(builder, engineSupplier, task, List.of(cFunction)), task, List.of(cFunction), fitnessCache);
+  }
+
+  /**
+   * Runs a task on the agent of a genotype and returns one fitness value for each cFunction.
+   */
+  @FunctionalInterface
+  public interface Simulator {
+    double[] simulate(String target, double[] genotype);
+  }
+
+  public static Simulator local(
+      CachedBuilder builder,
+      Supplier<Engine> engineSupplier,
+      String task,
+      List<String> cFunctions
+  ) {
+    return (target, genotype) -> {
+      Supplier<EmbodiedAgent> agentSupplier = builder.mapper(target).apply(Vectors.asList(genotype));
+      Events.Simulation event = new Events.Simulation();
+      event.begin();
+      Object outcome = builder.task(task).run(
+          () -> {
+            Events.AgentConstruction agentEvent = new Events.AgentConstruction();
+            agentEvent.begin();
+            EmbodiedAgent agent = agentSupplier.get();
+            agentEvent.target = target;
+            agentEvent.commit();
+            return agent;
+          },
+          engineSupplier.get()
+      );
+      event.target = target;
+      event.task = task;
+      event.commit();
+      double[] qs = new double[cFunctions.size()];
+      for (int i = 0; i < qs.length; i = i + 1) {
+        qs[i] = builder.cFunction(cFunctions.get(i)).apply(outcome);
+      }
+      return qs;
+    };
+  }
+
+  public double evaluate(String target, double[] genotype) {
+    return evaluateAll(target, genotype)[0];
+  }
+
+  public double[] evaluateAll(String target, double[] genotype) {
+    if (fitnessCache == null) {
+      return simulate(target, genotype);
+    }
+    Boolean deterministic = deterministicTargets.get(target);
+    if (deterministic == null) {
+      return check(target, genotype);
+    }
+    if (!deterministic) {
+      return simulate(target, genotype);
+    }
+    double[] qs = cached(target, genotype);
+    if (qs == null) {
+      qs = simulate(target, genotype);
+      cache(target, genotype, qs);
+    }
+    return qs;
+  }
+
+  private double[] cached(String target, double[] genotype) {
+    double[] qs = new double[cFunctions.size()];
+    for (int i = 0; i < qs.length; i = i + 1) {
+      Double q = fitnessCache.get(FitnessCache.key(target, task, cFunctions.get(i), repeats(target), genotype));
+      if (q == null) {
+        return null;
+      }
+      qs[i] = q;
+    }
+    return qs;
+  }
+
+  private void cache(String target, double[] genotype, double[] qs) {
+    for (int i = 0; i < qs.length; i = i + 1) {
+      fitnessCache.put(FitnessCache.key(target, task, cFunctions.get(i), repeats(target), genotype), qs[i]);
+    }
+  }
+
+  public int repeats(String target) {
+    if (noiseProfile == null) {
+      return 1;
+    }
+    return targetRepeats.computeIfAbsent(target, t -> {
+      NoiseProfile.Entry entry = noiseProfile.get(t, task);
+      if (entry == null) {
+        L.warning("No noise profile for target %s on task %s: evaluating once".formatted(t, task));
+        return 1;
+      }
+      L.info("Evaluating %d times for target %s on task %s, with sd=%.4f".formatted(
+          entry.repeats(),
+          t,
+          task,
+          entry.sd()
+      ));
+      return entry.repeats();
+    });
+  }
+
+  private double[] simulate(String target, double[] genotype) {
+    long startingT = System.nanoTime();
+    int repeats = repeats(target);
+    double[] qs = simulator.simulate(target, genotype);
+    for (int r = 1; r < repeats; r = r + 1) {
+      double[] otherQs = simulator.simulate(target, genotype);
+      for (int i = 0; i < qs.length; i = i + 1) {
+        qs[i] = qs[i] + otherQs[i];
+      }
+    }
+    for (int i = 0; i < qs.length && repeats > 1; i = i + 1) {
+      qs[i] = qs[i] / repeats;
+    }
+    if (costRecorder != null) {
+      costRecorder.accept(target, System.nanoTime() - startingT);
+    }
+    return qs;
+  }
+
+  private double[] check(String target, double[] genotype) {
+    //simulations are outside any lock, hence concurrent evaluations of the same target may check other genotypes
+    double[] qs = simulate(target, genotype);
+    if (!Arrays.equals(qs, simulate(target, genotype))) {
+      if (!Boolean.FALSE.equals(deterministicTargets.put(target, false))) {
+        L.warning("Evaluation is not deterministic: fitness cache disabled for target %s".formatted(target));
+      }
+      return qs;
+    }
+    cache(target, genotype, qs);
+    if (targetChecks.merge(target, 1, Integer::sum) >= N_OF_DETERMINISM_CHECKS) {
+      deterministicTargets.putIfAbsent(target, true);
+    }
+    return qs;
+  }
+}
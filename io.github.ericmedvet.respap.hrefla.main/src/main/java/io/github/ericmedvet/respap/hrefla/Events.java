@@ -0,0 +1,55 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import jdk.jfr.*;
+
+/**
+ * The JFR events of an evaluation. They cost (almost) nothing unless a recording is active, e.g., when running with
+ * {@code -XX:StartFlightRecording=filename=run.jfr}.
+ */
+public class Events {
+
+  private Events() {
+  }
+
+  @Name("io.github.ericmedvet.respap.hrefla.AgentConstruction")
+  @Label("Agent construction")
+  @Category("Landscape evaluation")
+  @Description("Construction of the agent from the outcome of the mapper")
+  public static class AgentConstruction extends Event {
+    @Label("Target")
+    String target;
+  }
+
+  @Name("io.github.ericmedvet.respap.hrefla.Build")
+  @Label("Build")
+  @Category("Landscape evaluation")
+  @Description("Build of a mapper, task, or cFunction from its expression, on cache misses")
+  public static class Build extends Event {
+    @Label("Kind")
+    String kind;
+    @Label("Expression")
+    String expression;
+  }
+
+  @Name("io.github.ericmedvet.respap.hrefla.OutputWrite")
+  @Label("Output write")
+  @Category("Landscape evaluation")
+  @Description("Write of one row to the output")
+  public static class OutputWrite extends Event {
+    @Label("Format")
+    String format;
+    @Label("Number of values")
+    int nOfValues;
+  }
+
+  @Name("io.github.ericmedvet.respap.hrefla.Simulation")
+  @Label("Simulation")
+  @Category("Landscape evaluation")
+  @Description("Run of the task on the agent, including the agent construction")
+  public static class Simulation extends Event {
+    @Label("Target")
+    String target;
+    @Label("Task")
+    String task;
+  }
+}
@@ -0,0 +1,140 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * The executor on which evaluations run, together with an online model of the cost of evaluations of each target
+ * (an exponentially weighted moving average of their duration) and with the accounting of the time its threads spend
+ * on tasks, for reporting their utilization. The cost model tells how many cheap evaluations are worth batching in a
+ * single task, so that the per-task overhead (of submission, completion, and scheduling) is amortized: it has to be
+ * given only the durations of actual simulations (see {@link Evaluator}), as the ones of fitness cache hits or of
+ * predictions would make the cost of a target vanish and its batches huge. On a work-stealing pool, the evaluations of
+ * a batch run through {@link #apply(List, Function)} are split among the threads which would otherwise be idle.
+ */
+public class ExecutionBackend {
+
+  private final static double ALPHA = 0.1;
+  private final static int MAX_BATCH_SIZE = 1000;
+
+  private final String name;
+  private final ExecutorService executorService;
+  private final int nOfThreads;
+  private final Map<String, Double> costs;
+  private final LongAdder busyNanos;
+  private final LongAdder nOfTasks;
+  private final long startingNanos;
+
+  public ExecutionBackend(String name, ExecutorService executorService, int nOfThreads) {
+    this.name = name;
+    this.executorService = executorService;
+    this.nOfThreads = nOfThreads;
+    costs = new HashMap<>();
+    busyNanos = new LongAdder();
+    nOfTasks = new LongAdder();
+    startingNanos = System.nanoTime();
+  }
+
+  public enum Kind {
+    FIXED, WORK_STEALING
+  }
+
+  public static ExecutionBackend of(Kind kind, int nOfThreads) {
+    return switch (kind) {
+      case FIXED -> new ExecutionBackend("fixed", Executors.newFixedThreadPool(nOfThreads), nOfThreads);
+      case WORK_STEALING -> new ExecutionBackend("work-stealing", new ForkJoinPool(nOfThreads), nOfThreads);
+    };
+  }
+
+  public int batchSize(String target, double batchSeconds) {
+    double cost = estimate(target);
+    if (Double.isNaN(cost) || batchSeconds <= cost) {
+      return 1;
+    }
+    return (int) Math.min(MAX_BATCH_SIZE, Math.max(1, Math.floor(batchSeconds / Math.max(cost, 1e-9))));
+  }
+
+  /**
+   * Applies a function to the items of a batch, in the current task, and returns the concatenation of its outputs, in
+   * order. On a work-stealing pool, the batch is recursively halved, forking one half each time, so that the idle
+   * threads steal parts of a long batch rather than waiting for the thread running it.
+   */
+  public <I, O> List<O> apply(List<I> batch, Function<I, List<O>> function) {
+    nOfTasks.increment();
+    return split(batch, function);
+  }
+
+  public void busy(long nanos) {
+    busyNanos.add(nanos);
+    nOfTasks.increment();
+  }
+
+  public synchronized double estimate(String target) {
+    return costs.getOrDefault(target, Double.NaN);
+  }
+
+  public ExecutorService executor() {
+    return executorService;
+  }
+
+  public int queueDepth() {
+    if (executorService instanceof ThreadPoolExecutor threadPoolExecutor) {
+      return threadPoolExecutor.getQueue().size();
+    }
+    if (executorService instanceof ForkJoinPool forkJoinPool) {
+      return (int) (forkJoinPool.getQueuedSubmissionCount() + forkJoinPool.getQueuedTaskCount());
+    }
+    return 0;
+  }
+
+  public synchronized void record(String target, long nanos) {
+    double seconds = nanos / 1e9;
+    costs.merge(target, seconds, (previous, current) -> previous + ALPHA * (current - previous));
+  }
+
+  private <I, O> List<O> split(List<I> batch, Function<I, List<O>> function) {
+    if (batch.size() > 1 && executorService instanceof ForkJoinPool && ForkJoinTask.inForkJoinPool()) {
+      int middle = batch.size() / 2;
+      ForkJoinTask<List<O>> second = ForkJoinTask.adapt(() -> split(batch.subList(middle, batch.size()), function))
+          .fork();
+      List<O> outputs = new ArrayList<>(split(batch.subList(0, middle), function));
+      outputs.addAll(second.join());
+      return outputs;
+    }
+    //time is accounted here, as the halves of a batch may run in different threads
+    long startingT = System.nanoTime();
+    List<O> outputs = new ArrayList<>();
+    for (I item : batch) {
+      outputs.addAll(function.apply(item));
+    }
+    busyNanos.add(System.nanoTime() - startingT);
+    return outputs;
+  }
+
+  public void shutdown() {
+    executorService.shutdown();
+  }
+
+  @Override
+  public String toString() {
+    double wallSeconds = (System.nanoTime() - startingNanos) / 1e9;
+    double busySeconds = busyNanos.sum() / 1e9;
+    String s = "%s pool with %d threads: %d tasks, %.1fs wall-clock, %.1fs busy, %.1f%% utilization".formatted(
+        name,
+        nOfThreads,
+        nOfTasks.sum(),
+        wallSeconds,
+        busySeconds,
+        100d * busySeconds / wallSeconds / nOfThreads
+    );
+    if (executorService instanceof ForkJoinPool forkJoinPool) {
+      s = s + ", %d steals".formatted(forkJoinPool.getStealCount());
+    }
+    return s;
+  }
+}
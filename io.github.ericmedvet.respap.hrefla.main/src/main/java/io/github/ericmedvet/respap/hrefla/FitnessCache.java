@@ -0,0 +1,193 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A persistent cache of fitness values keyed by a 128 bit hash of (target, task, cFunction, number of repeats, genotype
+ * bits), the number of repeats being the one of the evaluations whose mean is the value. Values are stored in a
+ * memory-mapped open-addressing hash table, hence they survive the process as soon as they are put, with an in-memory
+ * LRU tier on top. The table has a fixed capacity, set when the file is created: when it is 3/4 full, new values are
+ * no longer stored. As the table is not safe for concurrent processes, the file is locked while open and a file
+ * locked by another process (or already open in this one) cannot be opened.
+ */
+public class FitnessCache implements AutoCloseable {
+
+  private final static Logger L = Logger.getLogger(FitnessCache.class.getName());
+
+  private final static long MAGIC = 0x4852454c41464331L;
+  private final static int VERSION = 2;
+  private final static int HEADER_SIZE = 32;
+  private final static int SLOT_SIZE = 24;
+  private final static int MEMORY_SIZE = 100_000;
+
+  private final Path path;
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private final int capacity;
+  private final Map<Key, Double> memory;
+  private int size;
+  private boolean full;
+  private long nOfMemoryHits;
+  private long nOfDiskHits;
+  private long nOfMisses;
+
+  public FitnessCache(Path path, int capacity) throws IOException {
+    this.path = path;
+    boolean exists = Files.exists(path) && Files.size(path) > 0;
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    FileLock lock;
+    try {
+      lock = channel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      lock = null;
+    }
+    if (lock == null) {
+      channel.close();
+      throw new IOException("Fitness cache %s is in use by another run".formatted(path));
+    }
+    if (exists) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      channel.read(header, 0);
+      header.flip();
+      if (header.getLong() != MAGIC || header.getInt() != VERSION) {
+        channel.close();
+        throw new IOException("File %s is not a fitness cache of version %d".formatted(path, VERSION));
+      }
+      this.capacity = header.getInt();
+      size = header.getInt();
+    } else {
+      if (Integer.bitCount(capacity) != 1 || (long) capacity * SLOT_SIZE + HEADER_SIZE > Integer.MAX_VALUE) {
+        channel.close();
+        throw new IllegalArgumentException("Invalid capacity %d: should be a power of 2 not larger than %d".formatted(
+            capacity,
+            Integer.highestOneBit((Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE)
+        ));
+      }
+      this.capacity = capacity;
+      size = 0;
+    }
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) this.capacity * SLOT_SIZE);
+    buffer.putLong(0, MAGIC);
+    buffer.putInt(8, VERSION);
+    buffer.putInt(12, this.capacity);
+    buffer.putInt(16, size);
+    memory = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+        return size() > MEMORY_SIZE;
+      }
+    };
+    L.info("Fitness cache %s open with %d/%d values".formatted(path, size, this.capacity));
+  }
+
+  public record Key(long high, long low) {}
+
+  public static Key key(String target, String task, String cFunction, int repeats, double[] genotype) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      for (String s : List.of(target, task, cFunction)) {
+        digest.update(s.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+      }
+      ByteBuffer bb = ByteBuffer.allocate(Integer.BYTES + Double.BYTES * genotype.length);
+      bb.putInt(repeats);
+      for (double v : genotype) {
+        bb.putLong(Double.doubleToLongBits(v));
+      }
+      ByteBuffer hash = ByteBuffer.wrap(digest.digest(bb.array()));
+      long high = hash.getLong();
+      long low = hash.getLong();
+      //the all-zeros key marks empty slots
+      return new Key(high, (high == 0 && low == 0) ? 1 : low);
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    buffer.putInt(16, size);
+    buffer.force();
+    channel.close();
+    L.info("Fitness cache %s closed with %d/%d values: %s".formatted(path, size, capacity, this));
+  }
+
+  public synchronized Double get(Key key) {
+    Double q = memory.get(key);
+    if (q != null) {
+      nOfMemoryHits = nOfMemoryHits + 1;
+      return q;
+    }
+    int slot = slot(key);
+    if (slot >= 0 && !isEmpty(slot)) {
+      nOfDiskHits = nOfDiskHits + 1;
+      q = buffer.getDouble(HEADER_SIZE + slot * SLOT_SIZE + 16);
+      memory.put(key, q);
+      return q;
+    }
+    nOfMisses = nOfMisses + 1;
+    return null;
+  }
+
+  private boolean isEmpty(int slot) {
+    int offset = HEADER_SIZE + slot * SLOT_SIZE;
+    return buffer.getLong(offset) == 0 && buffer.getLong(offset + 8) == 0;
+  }
+
+  public synchronized void put(Key key, double q) {
+    memory.put(key, q);
+    int slot = slot(key);
+    if (slot < 0 || !isEmpty(slot)) {
+      return;
+    }
+    if (size >= capacity / 4 * 3) {
+      if (!full) {
+        L.warning("Fitness cache %s is full: new values will not be persisted".formatted(path));
+        full = true;
+      }
+      return;
+    }
+    int offset = HEADER_SIZE + slot * SLOT_SIZE;
+    buffer.putDouble(offset + 16, q);
+    buffer.putLong(offset + 8, key.low());
+    buffer.putLong(offset, key.high());
+    size = size + 1;
+    buffer.putInt(16, size);
+  }
+
+  private int slot(Key key) {
+    //linear probing: returns the slot with the key, or the first empty one, or -1
+    int mask = capacity - 1;
+    int slot = (int) (key.low() ^ (key.low() >>> 32)) & mask;
+    for (int i = 0; i < capacity; i = i + 1) {
+      int offset = HEADER_SIZE + slot * SLOT_SIZE;
+      long high = buffer.getLong(offset);
+      long low = buffer.getLong(offset + 8);
+      if ((high == 0 && low == 0) || (high == key.high() && low == key.low())) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "%d memory hits, %d disk hits, %d misses".formatted(nOfMemoryHits, nOfDiskHits, nOfMisses);
+  }
+}
@@ -0,0 +1,106 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Encodes numerical genotypes in a compact binary layout: one version byte, one precision byte, the number of genes
+ * as a 32 bit integer, and then the genes, all little-endian. The text form is the Base64 encoding of the binary
+ * layout. Decoding also accepts the legacy Java serialization of a {@code List<Double>}, as found in the
+ * {@code best→genotype→base64} column of the phase 1 outputs.
+ */
+public class GenotypeCodec {
+
+  private final static byte VERSION = 1;
+  private final static int HEADER_SIZE = 2 + Integer.BYTES;
+  private final static byte[] LEGACY_MAGIC = new byte[]{(byte) 0xAC, (byte) 0xED};
+
+  private GenotypeCodec() {
+  }
+
+  public enum Precision {
+    FLOAT64(Double.BYTES), FLOAT32(Float.BYTES);
+    private final int bytes;
+
+    Precision(int bytes) {
+      this.bytes = bytes;
+    }
+  }
+
+  public static List<Double> decode(byte[] bytes) {
+    return Vectors.asList(decodeToArray(bytes));
+  }
+
+  public static List<Double> decode(String s) {
+    return decode(Base64.getDecoder().decode(s));
+  }
+
+  public static double[] decodeToArray(byte[] bytes) {
+    if (bytes.length >= 2 && bytes[0] == LEGACY_MAGIC[0] && bytes[1] == LEGACY_MAGIC[1]) {
+      return Vectors.toArray(decodeLegacy(bytes));
+    }
+    if (bytes.length < HEADER_SIZE || bytes[0] != VERSION) {
+      throw new IllegalArgumentException("Unknown genotype encoding");
+    }
+    if (bytes[1] < 0 || bytes[1] >= Precision.values().length) {
+      throw new IllegalArgumentException("Unknown genotype precision %d".formatted(bytes[1]));
+    }
+    Precision precision = Precision.values()[bytes[1]];
+    ByteBuffer bb = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    int n = bb.getInt(2);
+    if (n < 0 || bytes.length != HEADER_SIZE + n * precision.bytes) {
+      throw new IllegalArgumentException("Wrong genotype length: %d bytes for %d genes".formatted(bytes.length, n));
+    }
+    bb.position(HEADER_SIZE);
+    double[] values = new double[n];
+    for (int i = 0; i < n; i = i + 1) {
+      values[i] = precision.equals(Precision.FLOAT64) ? bb.getDouble() : (double) bb.getFloat();
+    }
+    return values;
+  }
+
+  public static double[] decodeToArray(String s) {
+    return decodeToArray(Base64.getDecoder().decode(s));
+  }
+
+  private static List<Double> decodeLegacy(byte[] bytes) {
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      //noinspection unchecked
+      return (List<Double>) ois.readObject();
+    } catch (IOException | ClassNotFoundException e) {
+      throw new IllegalArgumentException("Cannot decode legacy genotype: %s".formatted(e), e);
+    }
+  }
+
+  public static byte[] encode(List<Double> values, Precision precision) {
+    return encode(Vectors.toArray(values), precision);
+  }
+
+  public static byte[] encode(double[] values, Precision precision) {
+    ByteBuffer bb = ByteBuffer.allocate(HEADER_SIZE + values.length * precision.bytes).order(ByteOrder.LITTLE_ENDIAN);
+    bb.put(VERSION);
+    bb.put((byte) precision.ordinal());
+    bb.putInt(values.length);
+    for (double v : values) {
+      if (precision.equals(Precision.FLOAT64)) {
+        bb.putDouble(v);
+      } else {
+        bb.putFloat((float) v);
+      }
+    }
+    return bb.array();
+  }
+
+  public static String encodeToString(List<Double> values, Precision precision) {
+    return Base64.getEncoder().encodeToString(encode(values, precision));
+  }
+
+  public static String encodeToString(double[] values, Precision precision) {
+    return Base64.getEncoder().encodeToString(encode(values, precision));
+  }
+}
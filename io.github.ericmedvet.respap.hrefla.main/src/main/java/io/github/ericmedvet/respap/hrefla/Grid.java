@@ -0,0 +1,99 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import io.github.ericmedvet.mrsim2d.core.util.DoubleRange;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.stream.IntStream;
+
+/**
+ * A regular grid over a hypercube, addressed by a mixed-radix linear index: the first dimension is the fastest
+ * varying one. Points are built on demand, hence the grid is never materialized.
+ */
+public class Grid implements Sampler, Iterable<double[]> {
+
+  private final int p;
+  private final double[] values;
+  private final long size;
+
+  public Grid(int p, int nOfValuesPerDimension, DoubleRange domain) {
+    if (p < 1) {
+      throw new IllegalArgumentException("Number of dimensions should be at least 1: got %d".formatted(p));
+    }
+    if (nOfValuesPerDimension < 1) {
+      throw new IllegalArgumentException("Number of values per dimension should be at least 1: got %d".formatted(
+          nOfValuesPerDimension));
+    }
+    this.p = p;
+    values = IntStream.range(0, nOfValuesPerDimension)
+        .mapToDouble(i -> nOfValuesPerDimension == 1 ? 0.5d : (double) i / (double) (nOfValuesPerDimension - 1))
+        .map(domain::denormalize)
+        .toArray();
+    long s = 1;
+    for (int i = 0; i < p; i = i + 1) {
+      try {
+        s = Math.multiplyExact(s, nOfValuesPerDimension);
+      } catch (ArithmeticException e) {
+        throw new IllegalArgumentException("Grid with %d^%d points is not addressable".formatted(
+            nOfValuesPerDimension,
+            p
+        ));
+      }
+    }
+    size = s;
+  }
+
+  @Override
+  public double[] get(long index, double[] out) {
+    checkIndex(index);
+    long remainder = index;
+    for (int i = 0; i < p; i = i + 1) {
+      out[i] = values[(int) (remainder % values.length)];
+      remainder = remainder / values.length;
+    }
+    return out;
+  }
+
+  @Override
+  public Iterator<double[]> iterator() {
+    return iterator(0, size);
+  }
+
+  public Iterator<double[]> iterator(long from, long to) {
+    if (from < 0 || to > size || from > to) {
+      throw new IndexOutOfBoundsException("Range [%d,%d[ out of bounds [0,%d[".formatted(from, to, size));
+    }
+    return new Iterator<>() {
+      private long index = from;
+
+      @Override
+      public boolean hasNext() {
+        return index < to;
+      }
+
+      @Override
+      public double[] next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        double[] genotype = get(index);
+        index = index + 1;
+        return genotype;
+      }
+    };
+  }
+
+  @Override
+  public int p() {
+    return p;
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  public double[] values() {
+    return values;
+  }
+}
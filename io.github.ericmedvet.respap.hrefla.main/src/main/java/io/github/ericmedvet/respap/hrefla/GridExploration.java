@@ -3,30 +3,23 @@ package io.github.ericmedvet.respap.hrefla;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
-import io.github.ericmedvet.jgea.experimenter.InvertibleMapper;
-import io.github.ericmedvet.jnb.core.NamedBuilder;
-import io.github.ericmedvet.mrsim2d.core.EmbodiedAgent;
-import io.github.ericmedvet.mrsim2d.core.engine.Engine;
-import io.github.ericmedvet.mrsim2d.core.tasks.Task;
 import io.github.ericmedvet.mrsim2d.core.util.DoubleRange;
 import io.github.ericmedvet.robotevo2d.main.PreparedNamedBuilder;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
 
 import java.io.IOException;
-import java.io.PrintStream;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.ServiceLoader;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
+import java.util.Set;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Function;
-import java.util.function.Supplier;
+import java.util.function.ObjLongConsumer;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 /**
  * @author "Eric Medvet" on 2023/01/18 for 2022-hybrid-robot-evolution-fitness-landscape-analysis
@@ -34,7 +27,7 @@ import java.util.stream.IntStream;
 public class GridExploration implements Runnable {
 
   private final static Logger L = Logger.getLogger(Starter.class.getName());
-  private final static String LEGGED_OPEN_2_MAPPER = """
+  final static String LEGGED_OPEN_2_MAPPER = """
       s.a.numLeggedHybridRobot(
         trunkLength = 10;
         trunkMass = 1;
@@ -53,24 +46,247 @@ public class GridExploration implements Runnable {
       """;
   private final static String TASK = "s.task.locomotion(terrain = s.t.steppy(chunkW = 2; chunkH = 0.25))";
   private final static String C_FUNCTION = "s.task.locomotion.xVelocity()";
-  private final static String MAPPER_TEMPLATE = "er.m.parametrizedHomoBrains(target=%TARGET%)";
   private final static DoubleRange GENE_DOMAIN = DoubleRange.SYMMETRIC_UNIT;
   @Parameter(
       names = {"--outputFile", "-of"},
       description = "Path of the file for the output"
   )
   public String outputFile = "";
+  @Parameter(
+      names = {"--outputFormat"},
+      description = "Format of the output file"
+  )
+  public RowSink.Format outputFormat = RowSink.Format.CSV;
+  @Parameter(
+      names = {"--outputQueueSize"},
+      description = "Max number of rows waiting to be written by the output thread; 0 for writing them in the thread " +
+          "collecting the results"
+  )
+  public int outputQueueSize = 10000;
+  @Parameter(
+      names = {"--outputFlushRows"},
+      description = "Number of rows after which the output thread flushes the output; 0 for never"
+  )
+  public int outputFlushRows = 0;
+  @Parameter(
+      names = {"--outputFlushMillis"},
+      description = "Milliseconds after which the output thread flushes the output; 0 for never"
+  )
+  public long outputFlushMillis = 60000;
+  @Parameter(
+      names = {"--executor"},
+      description = "Kind of the pool of threads evaluating the points locally"
+  )
+  public ExecutionBackend.Kind executor = ExecutionBackend.Kind.FIXED;
+  @Parameter(
+      names = {"--batchMillis"},
+      description = "Evaluations expected to take less than this are batched in tasks of about this duration; 0 for " +
+          "not batching"
+  )
+  public int batchMillis = 100;
+  @Parameter(
+      names = {"--target"},
+      description = "Mapper whose genotype space is explored; empty for the open legged hybrid robot with 2 chunks " +
+          "per leg (ignored with the SLICE sampler, which uses the target of the best)"
+  )
+  public String target = "";
+  @Parameter(
+      names = {"--sampler"},
+      description = "Way of choosing the points: full GRID, HALTON or SOBOL sequence, Latin hypercube (LHS), or " +
+          "SLICE through a best of phase 1"
+  )
+  public Sampler.Kind sampler = Sampler.Kind.GRID;
   @Parameter(
       names = {"--nOfValuesPerDimension", "-n"},
-      description = "Number of values per each dimension of the genotype space"
+      description = "Number of values per each dimension of the genotype space (of the sliced genes, with SLICE)"
   )
   public int nOfValuesPerDimension = 1;
+  @Parameter(
+      names = {"--nOfSamples"},
+      description = "Number of points of the HALTON, SOBOL, and LHS samplers"
+  )
+  public long nOfSamples = 1024;
+  @Parameter(
+      names = {"--randomSeed"},
+      description = "Seed of the LHS sampler"
+  )
+  public long randomSeed = 1;
+  @Parameter(
+      names = {"--inputFile", "-if"},
+      description = "Path of the file with the results of the evolution, from which the best sliced by SLICE is taken"
+  )
+  public String inputFile = "";
+  @Parameter(
+      names = {"--iteration"},
+      description = "Iteration of the best sliced by SLICE; negative for the last one"
+  )
+  public int iteration = -1;
+  @Parameter(
+      names = {"--seed"},
+      description = "Seed of the evolutionary run of the best sliced by SLICE; negative for the one with the highest q"
+  )
+  public int seed = -1;
+  @Parameter(
+      names = {"--targetFilter"},
+      description = "Regular expression matching (part of) the target of the best sliced by SLICE; empty for any"
+  )
+  public String targetFilter = "";
+  @Parameter(
+      names = {"--sliceGenes"},
+      description = "Indexes of the genes varied by SLICE, usually 2 or 3"
+  )
+  public List<Integer> sliceGenes = List.of(0, 1);
+  @Parameter(
+      names = {"--fromIndex"},
+      description = "Index of the first point to evaluate"
+  )
+  public long fromIndex = 0;
+  @Parameter(
+      names = {"--toIndex"},
+      description = "Index (excluded) of the last point to evaluate; negative for the number of points of the sampler"
+  )
+  public long toIndex = -1;
+  @Parameter(
+      names = {"--maxInFlight"},
+      description = "Max number of tasks (grid points, batches of cheap grid points, or lines, with " +
+          "--lowFidelityTask) being evaluated or waiting to be saved"
+  )
+  public int maxInFlight = 1000;
+  @Parameter(
+      names = {"--noiseProfile"},
+      description = "Path of the noise profile (saved by NoiseProfiler) telling how many times the points of each " +
+          "target are evaluated on each task; empty for evaluating them once"
+  )
+  public String noiseProfile = "";
+  @Parameter(
+      names = {"--fitnessCacheFile"},
+      description = "Path of the persistent fitness cache; empty for not using it"
+  )
+  public String fitnessCacheFile = "";
+  @Parameter(
+      names = {"--fitnessCacheCapacity"},
+      description = "Number of slots (a power of 2) of the fitness cache, if created"
+  )
+  public int fitnessCacheCapacity = 1 << 22;
+  @Parameter(
+      names = {"--resume"},
+      description = "Resume an interrupted run from its journal, skipping the completed tasks"
+  )
+  public boolean resume = false;
+  @Parameter(
+      names = {"--journalBatchSize"},
+      description = "Number of completed tasks after which the output is flushed and the journal is synced to disk, " +
+          "without the output thread; with it, the journal is synced at each flush of the output"
+  )
+  public int journalBatchSize = 100;
 
-  private static <T> List<T> append(List<T> ts, T t) {
-    List<T> newTs = new ArrayList<>(ts);
-    newTs.add(t);
-    return newTs;
-  }
+  @Parameter(
+      names = {"--coordinatorPort"},
+      description = "Port on which remote workers are waited for and given the evaluations; 0 for evaluating locally"
+  )
+  public int coordinatorPort = 0;
+  @Parameter(
+      names = {"--workerTimeout"},
+      description = "Seconds after which a silent remote worker is considered lost and its points are given to others"
+  )
+  public int workerTimeout = 60;
+  @Parameter(
+      names = {"--adaptive"},
+      description = "Refine a coarse grid (of --nOfValuesPerDimension cells per dimension) where q varies most"
+  )
+  public boolean adaptive = false;
+  @Parameter(
+      names = {"--budget"},
+      description = "Max number of evaluations in adaptive mode"
+  )
+  public int budget = 10000;
+  @Parameter(
+      names = {"--maxDepth"},
+      description = "Max number of bisections of a coarse cell in adaptive mode"
+  )
+  public int maxDepth = 10;
+  @Parameter(
+      names = {"--threshold"},
+      description = "Variation of q above which a cell is refined in adaptive mode"
+  )
+  public double threshold = 0;
+
+  @Parameter(
+      names = {"--lowFidelityTask"},
+      description = "Cheap task whose outcome decides which points of a grid line are evaluated on the full task; " +
+          "empty for evaluating all the points on the full task"
+  )
+  public String lowFidelityTask = "";
+  @Parameter(
+      names = {"--promotionRule"},
+      description = "Rule for choosing, within a grid line, the points to be evaluated also on the full task"
+  )
+  public MultiFidelity.Rule promotionRule = MultiFidelity.Rule.TOP_K;
+  @Parameter(
+      names = {"--promotionK"},
+      description = "Number of points of a grid line promoted by the TOP_K rule; it should be smaller than the " +
+          "--nOfValuesPerDimension points of a line"
+  )
+  public int promotionK = 3;
+  @Parameter(
+      names = {"--promotionTolerance"},
+      description = "Tolerance, relative to the reference q, of the NEAR_REFERENCE and DISAGREEMENT rules"
+  )
+  public double promotionTolerance = 0.1;
+  @Parameter(
+      names = {"--promotionAbsTolerance"},
+      description = "Min tolerance, in units of q, of the NEAR_REFERENCE and DISAGREEMENT rules, for references " +
+          "close to 0"
+  )
+  public double promotionAbsTolerance = 0.01;
+  @Parameter(
+      names = {"--surrogate"},
+      description = "Predict the q of the points from the simulated ones, and simulate only the points whose " +
+          "prediction is too uncertain"
+  )
+  public boolean surrogate = false;
+  @Parameter(
+      names = {"--surrogateK"},
+      description = "Number of nearest simulated points used for predicting the q of a point"
+  )
+  public int surrogateK = 8;
+  @Parameter(
+      names = {"--surrogateTolerance"},
+      description = "Max uncertainty of a prediction, and max validation RMSE of the predictions"
+  )
+  public double surrogateTolerance = 0.05;
+  @Parameter(
+      names = {"--surrogateMinPoints"},
+      description = "Number of simulated points before points are predicted"
+  )
+  public int surrogateMinPoints = 100;
+  @Parameter(
+      names = {"--surrogateValidation"},
+      description = "Fraction of the points which could be predicted that are simulated for validating the predictions"
+  )
+  public double surrogateValidation = 0.05;
+  @Parameter(
+      names = {"--metricsFile"},
+      description = "Path of the file where periodic summaries of progress and simulation latencies are saved; " +
+          "empty for just logging them"
+  )
+  public String metricsFile = "";
+  @Parameter(
+      names = {"--metricsInterval"},
+      description = "Seconds between summaries of progress and simulation latencies"
+  )
+  public int metricsInterval = 10;
+  @Parameter(
+      names = {"--referenceQ"},
+      description = "Reference q of the NEAR_REFERENCE and DISAGREEMENT rules; NaN for the low-fidelity q of the " +
+          "first point of each grid line"
+  )
+  public double referenceQ = Double.NaN;
+  @Parameter(
+      names = {"--builderCacheSize"},
+      description = "Max number of built mappers, tasks, and cFunctions kept for reuse"
+  )
+  public int builderCacheSize = 10;
 
   public static void main(String[] args) {
     try {
@@ -90,83 +306,460 @@ public class GridExploration implements Runnable {
     }
   }
 
-  private static <T> List<List<T>> product(List<List<T>> lists, List<T> values) {
-    return values.stream()
-        .map(v -> lists.stream()
-            .map(l -> append(l, v))
-            .toList()
-        )
-        .flatMap(List::stream)
-        .toList();
+  private static Evaluator evaluator(
+      String task,
+      CachedBuilder builder,
+      EngineFactory engineFactory,
+      Coordinator coordinator,
+      FitnessCache fitnessCache,
+      NoiseProfile noiseProfile,
+      RunMetrics runMetrics,
+      ObjLongConsumer<String> costRecorder
+  ) {
+    Evaluator.Simulator simulator = coordinator == null ? Evaluator.local(
+        builder,
+        engineFactory,
+        task,
+        List.of(C_FUNCTION)
+    ) : coordinator.simulator(task);
+    return new Evaluator(
+        runMetrics.timed(simulator),
+        task,
+        List.of(C_FUNCTION),
+        fitnessCache,
+        noiseProfile,
+        costRecorder
+    );
   }
 
-  public void run() {
-    NamedBuilder<?> nb = PreparedNamedBuilder.get();
-    Supplier<Engine> engineSupplier = () -> ServiceLoader.load(Engine.class)
-        .findFirst()
-        .orElseThrow(() -> new RuntimeException("Cannot instantiate an engine"));
-    @SuppressWarnings("unchecked") Function<Object, Double> cFunction = (Function<Object, Double>) nb.build(C_FUNCTION);
-    @SuppressWarnings("unchecked") Task<Supplier<EmbodiedAgent>, ?> task =
-        (Task<Supplier<EmbodiedAgent>, ?>) nb.build(
-            TASK);
-    @SuppressWarnings("unchecked") InvertibleMapper<List<Double>, Supplier<EmbodiedAgent>> mapper =
-        (InvertibleMapper<List<Double>, Supplier<EmbodiedAgent>>) nb.build(
-            MAPPER_TEMPLATE.replace("%TARGET%", LEGGED_OPEN_2_MAPPER));
-    int p = mapper.exampleInput().size();
-    List<Double> points = IntStream.range(0, nOfValuesPerDimension)
-        .mapToDouble(i -> (double) i / (double) (nOfValuesPerDimension - 1))
-        .map(GENE_DOMAIN::denormalize)
-        .boxed()
-        .toList();
-    System.out.printf("Will use %d values per dimension, with %d dimensions.%n", points.size(), p);
-    List<List<Double>> genotypes = points.stream().map(List::of).toList();
-    for (int i = 1; i < p; i = i + 1) {
-      genotypes = product(genotypes, points);
-    }
-    System.out.printf("Will use %d genotypes.%n", genotypes.size());
-    //do runs
-    ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-    record Outcome(List<Double> genotype, double q) {}
-    List<Future<Outcome>> futures = genotypes.stream()
-        .map(g -> executorService.submit(() -> new Outcome(
-                g,
-                cFunction.apply(task.run(mapper.apply(g), engineSupplier.get()))
-            )
-        ))
-        .toList();
-    //save results
-    CSVPrinter printer;
+  private void exploreAdaptive(
+      int p,
+      String target,
+      Evaluator evaluator,
+      ExecutionBackend backend,
+      RunMetrics runMetrics
+  ) {
+    AdaptiveGrid adaptiveGrid = new AdaptiveGrid(p, nOfValuesPerDimension, GENE_DOMAIN, maxDepth, threshold);
+    System.out.printf(
+        "Will refine %d coarse cells, with %d dimensions, up to %d evaluations.%n",
+        adaptiveGrid.nOfCoarseCells(),
+        p,
+        budget
+    );
+    runMetrics.planned(budget);
+    List<RowSink.Column> columns = new ArrayList<>(List.of(new RowSink.Column("q", RowSink.Type.DOUBLE)));
+    columns.addAll(IntStream.range(0, p).mapToObj(i -> new RowSink.Column("g%d".formatted(i), RowSink.Type.DOUBLE))
+        .toList());
+    columns.add(new RowSink.Column("level", RowSink.Type.INT));
+    try (RowSink sink = RowSink.asynchronous(
+        RowSink.of(outputFormat, Path.of(outputFile), columns, false),
+        outputQueueSize,
+        outputFlushRows,
+        outputFlushMillis
+    )) {
+      AtomicInteger counter = new AtomicInteger(0);
+      long nOfEvaluations = adaptiveGrid.explore(
+          backend.executor(),
+          g -> {
+            runMetrics.submitted(1);
+            long startingT = System.nanoTime();
+            double q = evaluator.evaluate(target, g);
+            backend.busy(System.nanoTime() - startingT);
+            return q;
+          },
+          budget,
+          maxInFlight,
+          point -> {
+            runMetrics.completed(1);
+            L.fine("Outcome %d/%d at level %d found: %6.3f".formatted(
+                counter.incrementAndGet(),
+                budget,
+                point.level(),
+                point.q()
+            ));
+            List<Object> values = new ArrayList<>(List.of(point.q()));
+            for (double v : point.genotype()) {
+              values.add(v);
+            }
+            values.add(point.level());
+            try {
+              sink.write(values);
+            } catch (IOException e) {
+              L.severe("Cannot print result due to: %s".formatted(e));
+            }
+          }
+      );
+      L.info("Adaptive exploration done with %d evaluations".formatted(nOfEvaluations));
+      sink.flush();
+      if (sink instanceof AsyncRowSink) {
+        L.info("Output: %s".formatted(sink));
+      }
+    } catch (IOException e) {
+      L.severe("Cannot write output file: %s".formatted(e));
+    }
+  }
+
+  private void exploreUniform(
+      Sampler sampler,
+      String journalHeader,
+      String target,
+      Evaluator evaluator,
+      MultiFidelity multiFidelity,
+      Surrogate surrogateModel,
+      ExecutionBackend backend,
+      RunMetrics runMetrics
+  ) {
+    int p = sampler.p();
+    long to = toIndex < 0 ? sampler.size() : toIndex;
+    System.out.printf("Will use a %s sampler with %d dimensions.%n", this.sampler, p);
+    System.out.printf("Will use %d genotypes in [%d,%d[ out of %d.%n", to - fromIndex, fromIndex, to, sampler.size());
+    //prepare output and journal
+    Path outputPath = Path.of(outputFile);
+    Path journalPath = Path.of(outputFile + ".journal");
+    RowSink sink;
+    Journal journal;
+    Set<String> completedKeys;
     try {
-      printer = new org.apache.commons.csv.CSVPrinter(
-          new PrintStream(outputFile),
-          CSVFormat.Builder.create().setDelimiter(";").build()
+      Journal.State state = resume ? Journal.resume(journalPath, outputPath, journalHeader) : new Journal.State(
+          journalHeader,
+          Set.of(),
+          0,
+          0
+      );
+      completedKeys = state.keys();
+      runMetrics.planned(to - fromIndex - completedKeys.size());
+      boolean append = state.outputLength() > 0;
+      List<RowSink.Column> columns = new ArrayList<>(List.of(new RowSink.Column("q", RowSink.Type.DOUBLE)));
+      columns.addAll(IntStream.range(0, p).mapToObj(i -> new RowSink.Column("g%d".formatted(i), RowSink.Type.DOUBLE))
+          .toList());
+      if (multiFidelity != null) {
+        columns.add(new RowSink.Column("lowFidelityQ", RowSink.Type.DOUBLE));
+      }
+      if (surrogateModel != null) {
+        columns.add(new RowSink.Column("source", RowSink.Type.DICTIONARY));
+        columns.add(new RowSink.Column("predictedQ", RowSink.Type.DOUBLE));
+        columns.add(new RowSink.Column("predictionUncertainty", RowSink.Type.DOUBLE));
+      }
+      sink = RowSink.asynchronous(
+          RowSink.of(outputFormat, outputPath, columns, append),
+          outputQueueSize,
+          outputFlushRows,
+          outputFlushMillis
+      );
+      //with the output thread, the journal is committed at its flushes, not to stall the collection of the results
+      journal = new Journal(
+          journalPath,
+          journalHeader,
+          sink instanceof AsyncRowSink ? 0 : journalBatchSize,
+          sink,
+          append
       );
-      List<String> names = new ArrayList<>(List.of("q"));
-      names.addAll(IntStream.range(0, p).mapToObj("g%d"::formatted).toList());
-      printer.printRecord(names);
     } catch (IOException e) {
       L.severe("Cannot open output file: %s".formatted(e));
-      executorService.shutdownNow();
       return;
     }
+    //do runs, keeping at most maxInFlight points in memory
+    record Outcome(long index, double[] genotype, double q, double lowFidelityQ, Surrogate.Estimate estimate) {}
     AtomicInteger counter = new AtomicInteger(0);
-    futures.forEach(f -> {
+    BoundedScheduler<List<Outcome>> scheduler = new BoundedScheduler<>(
+        backend.executor(),
+        maxInFlight,
+        true,
+        outcomes -> outcomes.forEach(outcome -> {
+          runMetrics.completed(1);
+          L.fine("Outcome %d/%d for found: %6.3f".formatted(
+              counter.incrementAndGet(),
+              to - fromIndex - completedKeys.size(),
+              outcome.q()
+          ));
+          List<Object> values = new ArrayList<>(List.of(outcome.q()));
+          for (double v : outcome.genotype()) {
+            values.add(v);
+          }
+          if (multiFidelity != null) {
+            values.add(outcome.lowFidelityQ());
+          }
+          if (outcome.estimate() != null) {
+            values.add(outcome.estimate().source().name());
+            values.add(outcome.estimate().predictedQ());
+            values.add(outcome.estimate().uncertainty());
+          }
+          try {
+            journal.record(Long.toString(outcome.index()), values);
+          } catch (IOException e) {
+            L.severe("Cannot print result due to: %s".formatted(e));
+          }
+        })
+    );
+    if (multiFidelity != null) {
+      //units are the lines along the fastest varying dimension, clipped to [fromIndex,to[
+      long lineLength = nOfValuesPerDimension;
+      for (long lineStart = fromIndex - fromIndex % lineLength; lineStart < to; lineStart = lineStart + lineLength) {
+        long from = Math.max(lineStart, fromIndex);
+        long end = Math.min(lineStart + lineLength, to);
+        if (LongStream.range(from, end).allMatch(i -> completedKeys.contains(Long.toString(i)))) {
+          continue;
+        }
+        List<double[]> genotypes = LongStream.range(from, end).mapToObj(sampler::get).toList();
+        runMetrics.submitted((int) LongStream.range(from, end)
+            .filter(i -> !completedKeys.contains(Long.toString(i)))
+            .count());
+        scheduler.submit(() -> {
+          long startingT = System.nanoTime();
+          MultiFidelity.Evaluation[] evaluations = multiFidelity.evaluate(target, genotypes);
+          backend.busy(System.nanoTime() - startingT);
+          List<Outcome> outcomes = new ArrayList<>();
+          for (int i = 0; i < evaluations.length; i = i + 1) {
+            if (!completedKeys.contains(Long.toString(from + i))) {
+              outcomes.add(new Outcome(
+                  from + i,
+                  genotypes.get(i),
+                  evaluations[i].q(),
+                  evaluations[i].lowFidelityQ(),
+                  null
+              ));
+            }
+          }
+          return outcomes;
+        });
+      }
+    } else {
+      //consecutive points are batched as long as they are expected to be cheap
+      long i = fromIndex;
+      while (i < to) {
+        List<Long> indexes = new ArrayList<>();
+        int batchSize = backend.batchSize(target, batchMillis / 1000d);
+        while (i < to && indexes.size() < batchSize) {
+          if (!completedKeys.contains(Long.toString(i))) {
+            indexes.add(i);
+          }
+          i = i + 1;
+        }
+        if (indexes.isEmpty()) {
+          continue;
+        }
+        runMetrics.submitted(indexes.size());
+        scheduler.submit(() -> backend.apply(indexes, index -> {
+          double[] g = sampler.get(index);
+          if (surrogateModel != null) {
+            Surrogate.Estimate estimate = surrogateModel.evaluate(target, g);
+            return List.of(new Outcome(index, g, estimate.q(), Double.NaN, estimate));
+          }
+          return List.of(new Outcome(index, g, evaluator.evaluate(target, g), Double.NaN, null));
+        }));
+      }
+    }
+    scheduler.drain();
+    try {
+      sink.close();
+      journal.close();
+    } catch (IOException e) {
+      L.severe("Cannot close output file: %s".formatted(e));
+    }
+    if (sink instanceof AsyncRowSink) {
+      L.info("Output: %s".formatted(sink));
+    }
+  }
+
+  private BestReader.Best sliceBase() {
+    List<BestReader.Best> bests;
+    try {
+      bests = BestReader.read(
+          Path.of(inputFile),
+          new BestReader.Filter(
+              iteration < 0 ? null : Set.of(iteration),
+              seed < 0 ? null : Set.of(seed),
+              targetFilter.isEmpty() ? null : Pattern.compile(targetFilter)
+          ),
+          false
+      );
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Cannot read input file %s: %s".formatted(inputFile, e));
+    }
+    BestReader.Best best = bests.stream()
+        .max(Comparator.comparingInt(BestReader.Best::iteration).thenComparingDouble(BestReader.Best::q))
+        .orElseThrow(() -> new IllegalArgumentException("No best in %s matches the filters".formatted(inputFile)));
+    L.info("Slicing best of seed %d at iteration %d with q=%.3f for %s".formatted(
+        best.seed(),
+        best.iteration(),
+        best.q(),
+        best.target()
+    ));
+    return best;
+  }
+
+  public void run() {
+    if (adaptive && resume) {
+      throw new IllegalArgumentException("Cannot resume in adaptive mode: use a fitness cache to cheaply redo a run");
+    }
+    if (adaptive && !lowFidelityTask.isEmpty()) {
+      throw new IllegalArgumentException("Cannot use a low-fidelity task in adaptive mode");
+    }
+    if (surrogate && (adaptive || !lowFidelityTask.isEmpty())) {
+      throw new IllegalArgumentException("Cannot use a surrogate in adaptive mode or with a low-fidelity task");
+    }
+    if (adaptive && !sampler.equals(Sampler.Kind.GRID)) {
+      throw new IllegalArgumentException("Cannot use the %s sampler in adaptive mode".formatted(sampler));
+    }
+    if (!lowFidelityTask.isEmpty() && !sampler.equals(Sampler.Kind.GRID) && !sampler.equals(Sampler.Kind.SLICE)) {
+      throw new IllegalArgumentException(("Cannot use a low-fidelity task with the %s sampler, whose points do not " +
+          "form lines").formatted(sampler));
+    }
+    CachedBuilder builder = new CachedBuilder(PreparedNamedBuilder.get(), builderCacheSize);
+    EngineFactory engineFactory = EngineFactory.fromServiceLoader();
+    //choose the explored genotype space and its points
+    String target = this.target.isEmpty() ? LEGGED_OPEN_2_MAPPER : this.target;
+    BestReader.Best base = null;
+    if (sampler.equals(Sampler.Kind.SLICE)) {
+      base = sliceBase();
+      target = base.target();
+    }
+    int p = builder.mapper(target).exampleInput().size();
+    if (base != null && base.genotype().length != p) {
+      throw new IllegalArgumentException("Genotype of the best has size %d instead of %d".formatted(
+          base.genotype().length,
+          p
+      ));
+    }
+    Sampler points = switch (sampler) {
+      case GRID -> new Grid(p, nOfValuesPerDimension, GENE_DOMAIN);
+      case HALTON -> new HaltonSampler(p, nOfSamples, GENE_DOMAIN);
+      case SOBOL -> new SobolSampler(p, nOfSamples, GENE_DOMAIN);
+      case LHS -> new LatinHypercubeSampler(p, nOfSamples, GENE_DOMAIN, randomSeed);
+      case SLICE -> new SliceSampler(
+          base.genotype(),
+          sliceGenes.stream().mapToInt(Integer::intValue).toArray(),
+          nOfValuesPerDimension,
+          GENE_DOMAIN
+      );
+    };
+    long to = toIndex < 0 ? points.size() : toIndex;
+    if (fromIndex < 0 || to > points.size() || fromIndex > to) {
+      throw new IllegalArgumentException("Invalid range of indexes [%d,%d[: should be within [0,%d[".formatted(
+          fromIndex,
+          to,
+          points.size()
+      ));
+    }
+    //the parameters defining the point of each index, which is the key of the journal
+    String journalHeader = "sampler=%s;target=%s;%s".formatted(sampler, target, switch (sampler) {
+      case GRID -> "nOfValuesPerDimension=%d".formatted(nOfValuesPerDimension);
+      case HALTON, SOBOL -> "nOfSamples=%d".formatted(nOfSamples);
+      case LHS -> "nOfSamples=%d;randomSeed=%d".formatted(nOfSamples, randomSeed);
+      case SLICE -> "nOfValuesPerDimension=%d;sliceGenes=%s;base=%08x".formatted(
+          nOfValuesPerDimension,
+          sliceGenes,
+          Arrays.hashCode(base.genotype())
+      );
+    });
+    FitnessCache fitnessCache = null;
+    if (!fitnessCacheFile.isEmpty()) {
       try {
-        Outcome outcome = f.get();
-        System.out.printf(
-            "Outcome %d/%d for found: %6.3f%n", counter.incrementAndGet(),
-            futures.size(),
-            outcome.q()
-        );
-        List<Object> values = new ArrayList<>(List.of(outcome.q()));
-        values.addAll(outcome.genotype);
-        printer.printRecord(values);
-      } catch (InterruptedException | ExecutionException e) {
-        L.severe("Cannot get result due to: %s".formatted(e));
+        fitnessCache = new FitnessCache(Path.of(fitnessCacheFile), fitnessCacheCapacity);
       } catch (IOException e) {
-        L.severe("Cannot print result due to: %s".formatted(e));
+        throw new IllegalArgumentException("Cannot open fitness cache %s: %s".formatted(fitnessCacheFile, e));
       }
-    });
-    executorService.shutdown();
+    }
+    NoiseProfile profile = null;
+    if (!noiseProfile.isEmpty()) {
+      try {
+        profile = NoiseProfile.read(Path.of(noiseProfile));
+        L.info("Noise profile: %s".formatted(profile));
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Cannot read noise profile %s: %s".formatted(noiseProfile, e));
+      }
+    }
+    Coordinator coordinator = null;
+    ExecutionBackend backend;
+    if (coordinatorPort > 0) {
+      try {
+        coordinator = new Coordinator(coordinatorPort, List.of(C_FUNCTION), workerTimeout * 1000);
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Cannot start coordinator on port %d: %s".formatted(coordinatorPort, e));
+      }
+      //threads just wait for remote results, their number is bounded by maxInFlight
+      backend = new ExecutionBackend("remote", Executors.newCachedThreadPool(), maxInFlight);
+    } else {
+      backend = ExecutionBackend.of(executor, Runtime.getRuntime().availableProcessors());
+    }
+    RunMetrics runMetrics;
+    try {
+      runMetrics = new RunMetrics(
+          metricsFile.isEmpty() ? null : Path.of(metricsFile),
+          metricsInterval * 1000L,
+          backend::queueDepth
+      );
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Cannot open metrics file %s: %s".formatted(metricsFile, e));
+    }
+    Evaluator evaluator = evaluator(
+        TASK,
+        builder,
+        engineFactory,
+        coordinator,
+        fitnessCache,
+        profile,
+        runMetrics,
+        backend::record
+    );
+    MultiFidelity multiFidelity = null;
+    if (!lowFidelityTask.isEmpty()) {
+      if (promotionRule.equals(MultiFidelity.Rule.TOP_K) && promotionK >= nOfValuesPerDimension) {
+        L.warning("--promotionK %d promotes all the %d points of each line, saving no simulation".formatted(
+            promotionK,
+            nOfValuesPerDimension
+        ));
+      }
+      multiFidelity = new MultiFidelity(
+          evaluator(lowFidelityTask, builder, engineFactory, coordinator, fitnessCache, profile, runMetrics, null),
+          evaluator,
+          promotionRule,
+          promotionK,
+          promotionTolerance,
+          promotionAbsTolerance,
+          referenceQ
+      );
+    }
+    if (adaptive) {
+      exploreAdaptive(p, target, evaluator, backend, runMetrics);
+    } else {
+      Surrogate surrogateModel = surrogate ? new Surrogate(
+          evaluator,
+          surrogateK,
+          surrogateTolerance,
+          surrogateMinPoints,
+          surrogateValidation
+      ) : null;
+      exploreUniform(points, journalHeader, target, evaluator, multiFidelity, surrogateModel, backend, runMetrics);
+      if (surrogateModel != null) {
+        L.info("Surrogate: %s".formatted(surrogateModel));
+      }
+    }
+    try {
+      runMetrics.close();
+    } catch (IOException e) {
+      L.severe("Cannot close metrics file: %s".formatted(e));
+    }
+    if (multiFidelity != null) {
+      L.info("Multi-fidelity: %s".formatted(multiFidelity));
+    }
+    L.info("Execution: %s".formatted(backend));
+    L.info("Engine factory: %s".formatted(engineFactory));
+    if (coordinator != null) {
+      L.info("Coordinator: %s".formatted(coordinator));
+      try {
+        coordinator.close();
+      } catch (IOException e) {
+        L.severe("Cannot close coordinator: %s".formatted(e));
+      }
+    }
+    if (fitnessCache != null) {
+      try {
+        fitnessCache.close();
+      } catch (IOException e) {
+        L.severe("Cannot close fitness cache: %s".formatted(e));
+      }
+    }
+    backend.shutdown();
   }
 }
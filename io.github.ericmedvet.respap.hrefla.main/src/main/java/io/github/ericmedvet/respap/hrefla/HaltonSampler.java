@@ -0,0 +1,75 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import io.github.ericmedvet.mrsim2d.core.util.DoubleRange;
+
+/**
+ * The Halton sequence over a hypercube: the {@code i}-th coordinate of the point with index {@code n} is the radical
+ * inverse of {@code n} in the base given by the {@code i}-th prime. Points are well spread for any number of them, but
+ * consecutive coordinates with large bases are correlated on short prefixes of the sequence: with tens of dimensions,
+ * {@link SobolSampler} is usually a better choice.
+ */
+public class HaltonSampler implements Sampler {
+
+  private final int[] bases;
+  private final long size;
+  private final DoubleRange domain;
+
+  public HaltonSampler(int p, long size, DoubleRange domain) {
+    if (p < 1) {
+      throw new IllegalArgumentException("Number of dimensions should be at least 1: got %d".formatted(p));
+    }
+    if (size < 1) {
+      throw new IllegalArgumentException("Number of points should be at least 1: got %d".formatted(size));
+    }
+    this.size = size;
+    this.domain = domain;
+    bases = new int[p];
+    int candidate = 2;
+    for (int i = 0; i < p; i = i + 1) {
+      while (!isPrime(candidate)) {
+        candidate = candidate + 1;
+      }
+      bases[i] = candidate;
+      candidate = candidate + 1;
+    }
+  }
+
+  private static boolean isPrime(int n) {
+    for (int d = 2; d * d <= n; d = d + 1) {
+      if (n % d == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static double radicalInverse(long n, int base) {
+    double f = 1;
+    double r = 0;
+    while (n > 0) {
+      f = f / base;
+      r = r + f * (n % base);
+      n = n / base;
+    }
+    return r;
+  }
+
+  @Override
+  public double[] get(long index, double[] out) {
+    checkIndex(index);
+    for (int i = 0; i < bases.length; i = i + 1) {
+      out[i] = domain.denormalize(radicalInverse(index, bases[i]));
+    }
+    return out;
+  }
+
+  @Override
+  public int p() {
+    return bases.length;
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+}
@@ -0,0 +1,193 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * An append-only journal of the keys of the completed tasks, committed in batches: whenever the output notifies (as
+ * its {@link RowSink.CommitListener}) that its first rows are durable, the keys of those rows are appended, followed
+ * by the length of the output, and the journal is synced to disk. Hence, on resume, the output can be truncated to
+ * the last committed length and the tasks with a committed key can be skipped. Rows are written to the output through
+ * {@link #record(String, List)}, which pairs them with their keys: the key of a row which cannot be written is dropped.
+ * If {@code batchSize} is positive, the output is flushed by the thread recording the keys every {@code batchSize}
+ * rows; otherwise, the journal is committed only when the output is flushed by others
+ * (e.g., by the writing thread of an {@link AsyncRowSink}) and when it is closed, which has to happen before closing
+ * the journal. A new journal may start with a header describing what the keys refer to (e.g., the parameters of the
+ * sampler whose indexes are the keys): a run is resumed only with the same header.
+ */
+public class Journal implements AutoCloseable {
+
+  private final static Logger L = Logger.getLogger(Journal.class.getName());
+  private final static String LENGTH_PREFIX = "@";
+  private final static String HEADER_PREFIX = "#";
+
+  private final FileChannel channel;
+  private final int batchSize;
+  private final RowSink output;
+  private final Deque<String> keys;
+  private long nOfCommittedRows;
+  private int nOfUnflushedKeys;
+
+  public Journal(Path path, String header, int batchSize, RowSink output, boolean append) throws IOException {
+    channel = append ? FileChannel.open(
+        path,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE,
+        StandardOpenOption.APPEND
+    ) : FileChannel.open(
+        path,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING
+    );
+    this.batchSize = batchSize;
+    this.output = output;
+    keys = new ArrayDeque<>();
+    if (!append && header != null) {
+      append(HEADER_PREFIX + header + "\n");
+    }
+    output.onCommit(this::commit);
+  }
+
+  /**
+   * The content of a journal: {@code length} is the number of its bytes up to the end of the last committed batch
+   * (or of the header), after which there may be the keys of a batch not committed or a torn line.
+   */
+  public record State(String header, Set<String> keys, long outputLength, long length) {}
+
+  public static State read(Path path) throws IOException {
+    Set<String> committedKeys = new HashSet<>();
+    List<String> batchKeys = new ArrayList<>();
+    String header = null;
+    long outputLength = 0;
+    long length = 0;
+    if (!Files.exists(path)) {
+      return new State(header, committedKeys, outputLength, length);
+    }
+    try (InputStream is = new BufferedInputStream(Files.newInputStream(path))) {
+      ByteArrayOutputStream line = new ByteArrayOutputStream();
+      long position = 0;
+      int b;
+      //a line is valid only if terminated, since the last one may be torn
+      while ((b = is.read()) != -1) {
+        position = position + 1;
+        if (b != '\n') {
+          line.write(b);
+          continue;
+        }
+        String s = line.toString(StandardCharsets.UTF_8);
+        line.reset();
+        if (s.startsWith(HEADER_PREFIX)) {
+          header = s.substring(HEADER_PREFIX.length());
+          length = position;
+        } else if (s.startsWith(LENGTH_PREFIX)) {
+          try {
+            outputLength = Long.parseLong(s.substring(LENGTH_PREFIX.length()));
+          } catch (NumberFormatException e) {
+            break;
+          }
+          committedKeys.addAll(batchKeys);
+          batchKeys.clear();
+          length = position;
+        } else {
+          batchKeys.add(s);
+        }
+      }
+    }
+    return new State(header, committedKeys, outputLength, length);
+  }
+
+  public static State resume(Path path, Path outputPath, String header) throws IOException {
+    State state = read(path);
+    if (state.outputLength() == 0 || !Files.exists(outputPath) || Files.size(outputPath) < state.outputLength()) {
+      L.warning("Cannot resume from journal %s: starting from scratch".formatted(path));
+      return new State(header, Set.of(), 0, 0);
+    }
+    if (header != null && !header.equals(state.header())) {
+      throw new IllegalArgumentException("Cannot resume from journal %s, which is of a run with %s instead of %s"
+          .formatted(path, state.header(), header));
+    }
+    try (FileChannel outputChannel = FileChannel.open(outputPath, StandardOpenOption.WRITE)) {
+      outputChannel.truncate(state.outputLength());
+    }
+    //drop the keys not committed, which would be committed with the next batch otherwise
+    try (FileChannel journalChannel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      journalChannel.truncate(state.length());
+    }
+    L.info("Resuming from journal %s with %d completed tasks".formatted(path, state.keys().size()));
+    return state;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (!keys.isEmpty()) {
+      L.warning("%d keys not committed, as their rows are not durable".formatted(keys.size()));
+    }
+    channel.close();
+  }
+
+  private synchronized void commit(long nOfRows, long outputLength) throws IOException {
+    long n = nOfRows - nOfCommittedRows;
+    if (n <= 0) {
+      return;
+    }
+    if (n > keys.size()) {
+      throw new IOException("Cannot commit %d rows with %d recorded keys".formatted(n, keys.size()));
+    }
+    StringBuilder sb = new StringBuilder();
+    for (long i = 0; i < n; i = i + 1) {
+      sb.append(keys.poll()).append('\n');
+    }
+    sb.append(LENGTH_PREFIX).append(outputLength).append('\n');
+    append(sb.toString());
+    nOfCommittedRows = nOfRows;
+  }
+
+  private void append(String s) throws IOException {
+    ByteBuffer bb = ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+    while (bb.hasRemaining()) {
+      channel.write(bb);
+    }
+    channel.force(false);
+  }
+
+  /**
+   * Records the key of a row and writes the row to the output. The key is recorded before writing, since the row may
+   * be committed (e.g., by the writing thread of an {@link AsyncRowSink}) as soon as it is written, and it is dropped
+   * if the row cannot be written.
+   */
+  public void record(String key, List<?> values) throws IOException {
+    synchronized (this) {
+      keys.add(key);
+    }
+    try {
+      output.write(values);
+    } catch (IOException | RuntimeException e) {
+      synchronized (this) {
+        keys.removeLastOccurrence(key);
+      }
+      throw e;
+    }
+    boolean flush;
+    synchronized (this) {
+      nOfUnflushedKeys = nOfUnflushedKeys + 1;
+      flush = batchSize > 0 && nOfUnflushedKeys >= batchSize;
+      if (flush) {
+        nOfUnflushedKeys = 0;
+      }
+    }
+    if (flush) {
+      output.flush();
+    }
+  }
+}
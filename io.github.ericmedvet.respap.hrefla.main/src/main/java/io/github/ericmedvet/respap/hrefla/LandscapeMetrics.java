@@ -0,0 +1,193 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Keeps, for each target, running estimates of landscape metrics from the points of the walks, as they come:
+ * <ul>
+ *   <li>autocorrelation: the correlation between the fitness of consecutive points of the walks;</li>
+ *   <li>fdc: the correlation between the fitness of the points and their distance from the source of the walk;</li>
+ *   <li>neutrality: the ratio of consecutive points whose fitness differs by at most the tolerance times the
+ *   absolute fitness of the walk source;</li>
+ *   <li>absDeltaQ: the distribution (mean, standard deviation, min, max) of the absolute difference between the
+ *   fitness of the points and the one of the walk source, for each step index (i.e., distance).</li>
+ * </ul>
+ * Points are kept only until their walk is complete; estimates are updated incrementally, hence memory does not grow
+ * with the number of walks. Non-finite fitness values (e.g., of points not promoted in multi-fidelity runs) are
+ * ignored. When resuming a run, the points of the partially done walks which are already in the output are given
+ * through {@link #skip(String, int)}, so that these walks complete (without the fitness of those points). Snapshots
+ * of the estimates are appended to a CSV file at given intervals and on close. Methods are meant to be invoked by a
+ * single thread.
+ */
+public class LandscapeMetrics implements Closeable {
+
+  private final static Logger L = Logger.getLogger(LandscapeMetrics.class.getName());
+
+  private final int nOfSteps;
+  private final double neutralityTolerance;
+  private final long intervalMillis;
+  private final CSVPrinter printer;
+  private final Map<String, double[]> walks;
+  private final Map<String, TargetMetrics> targetMetrics;
+  private final long startingMillis;
+  private long lastSnapshotMillis;
+
+  public LandscapeMetrics(int nOfSteps, double neutralityTolerance, Path path, long intervalMillis) throws IOException {
+    this.nOfSteps = nOfSteps;
+    this.neutralityTolerance = neutralityTolerance;
+    this.intervalMillis = intervalMillis;
+    printer = new CSVPrinter(new FileWriter(path.toFile()), CSVFormat.Builder.create().setDelimiter(";").build());
+    printer.printRecord("elapsed", "target", "metric", "stepIndex", "n", "value", "sd", "min", "max");
+    walks = new HashMap<>();
+    targetMetrics = new LinkedHashMap<>();
+    startingMillis = System.currentTimeMillis();
+    lastSnapshotMillis = startingMillis;
+  }
+
+  private static class Moments {
+    private long n;
+    private double mean;
+    private double m2;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    void add(double x) {
+      n = n + 1;
+      double delta = x - mean;
+      mean = mean + delta / n;
+      m2 = m2 + delta * (x - mean);
+      min = Math.min(min, x);
+      max = Math.max(max, x);
+    }
+
+    double sd() {
+      return n < 2 ? Double.NaN : Math.sqrt(m2 / (n - 1));
+    }
+  }
+
+  private static class CoMoments {
+    private long n;
+    private double meanX;
+    private double meanY;
+    private double m2X;
+    private double m2Y;
+    private double cXY;
+
+    void add(double x, double y) {
+      n = n + 1;
+      double deltaX = x - meanX;
+      meanX = meanX + deltaX / n;
+      double deltaY = y - meanY;
+      meanY = meanY + deltaY / n;
+      m2X = m2X + deltaX * (x - meanX);
+      m2Y = m2Y + deltaY * (y - meanY);
+      cXY = cXY + deltaX * (y - meanY);
+    }
+
+    double correlation() {
+      return cXY / Math.sqrt(m2X * m2Y);
+    }
+  }
+
+  private static class TargetMetrics {
+    private final CoMoments autocorrelation = new CoMoments();
+    private final CoMoments fdc = new CoMoments();
+    private final Moments neutrality = new Moments();
+    private final Moments[] absDeltaQs;
+    private long nOfWalks;
+
+    TargetMetrics(int nOfSteps) {
+      absDeltaQs = new Moments[nOfSteps + 1];
+      for (int i = 0; i < absDeltaQs.length; i = i + 1) {
+        absDeltaQs[i] = new Moments();
+      }
+    }
+  }
+
+  private double[] receive(String walkKey, int stepIndex, double q) {
+    double[] qs = walks.computeIfAbsent(walkKey, k -> new double[nOfSteps + 2]);
+    qs[stepIndex] = q;
+    //the last element counts the received points
+    qs[nOfSteps + 1] = qs[nOfSteps + 1] + 1;
+    return qs;
+  }
+
+  public void skip(String walkKey, int stepIndex) {
+    receive(walkKey, stepIndex, Double.NaN);
+  }
+
+  public void add(String target, String walkKey, int stepIndex, double d, double q) throws IOException {
+    double[] qs = receive(walkKey, stepIndex, q);
+    TargetMetrics metrics = targetMetrics.computeIfAbsent(target, t -> new TargetMetrics(nOfSteps));
+    if (Double.isFinite(q)) {
+      metrics.fdc.add(d, q);
+    }
+    if (qs[nOfSteps + 1] > nOfSteps) {
+      walks.remove(walkKey);
+      metrics.nOfWalks = metrics.nOfWalks + 1;
+      double srcQ = qs[0];
+      for (int i = 0; i <= nOfSteps; i = i + 1) {
+        if (Double.isFinite(srcQ) && Double.isFinite(qs[i])) {
+          metrics.absDeltaQs[i].add(Math.abs(qs[i] - srcQ));
+        }
+        if (i > 0 && Double.isFinite(qs[i - 1]) && Double.isFinite(qs[i])) {
+          metrics.autocorrelation.add(qs[i - 1], qs[i]);
+          if (Double.isFinite(srcQ)) {
+            metrics.neutrality.add(Math.abs(qs[i] - qs[i - 1]) <= neutralityTolerance * Math.abs(srcQ) ? 1 : 0);
+          }
+        }
+      }
+    }
+    if (System.currentTimeMillis() - lastSnapshotMillis >= intervalMillis) {
+      snapshot();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    snapshot();
+    if (!walks.isEmpty()) {
+      L.warning("%d walks not completed".formatted(walks.size()));
+    }
+    printer.close();
+  }
+
+  public void snapshot() throws IOException {
+    lastSnapshotMillis = System.currentTimeMillis();
+    double elapsed = (lastSnapshotMillis - startingMillis) / 1000d;
+    for (Map.Entry<String, TargetMetrics> entry : targetMetrics.entrySet()) {
+      TargetMetrics metrics = entry.getValue();
+      printer.printRecord(elapsed, entry.getKey(), "autocorrelation", "", metrics.autocorrelation.n,
+          metrics.autocorrelation.correlation(), "", "", ""
+      );
+      printer.printRecord(elapsed, entry.getKey(), "fdc", "", metrics.fdc.n, metrics.fdc.correlation(), "", "", "");
+      printer.printRecord(elapsed, entry.getKey(), "neutrality", "", metrics.neutrality.n, metrics.neutrality.mean,
+          metrics.neutrality.sd(), "", ""
+      );
+      for (int i = 0; i < metrics.absDeltaQs.length; i = i + 1) {
+        Moments moments = metrics.absDeltaQs[i];
+        printer.printRecord(elapsed, entry.getKey(), "absDeltaQ", i, moments.n, moments.mean, moments.sd(),
+            moments.min, moments.max
+        );
+      }
+      L.info("Landscape after %d walks: autocorrelation=%.3f fdc=%.3f neutrality=%.3f for %s".formatted(
+          metrics.nOfWalks,
+          metrics.autocorrelation.correlation(),
+          metrics.fdc.correlation(),
+          metrics.neutrality.mean,
+          entry.getKey().length() > 40 ? entry.getKey().substring(0, 40) + "..." : entry.getKey()
+      ));
+    }
+    printer.flush();
+  }
+}
@@ -0,0 +1,85 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import io.github.ericmedvet.mrsim2d.core.util.DoubleRange;
+
+import java.util.SplittableRandom;
+
+/**
+ * A Latin hypercube sample of {@code size} points over a hypercube: along each dimension, the range is divided in
+ * {@code size} strata and each stratum holds exactly one point, at a random position within it. The stratum of the
+ * point with index {@code n} along a dimension is the image of {@code n} through a keyed pseudo-random permutation,
+ * obtained by cycle walking on a bijection over the enclosing power of 2; hence, no permutation is materialized and
+ * any point can be regenerated from its index and the seed.
+ */
+public class LatinHypercubeSampler implements Sampler {
+
+  private final static int ROUNDS = 4;
+
+  private final int p;
+  private final long size;
+  private final DoubleRange domain;
+  private final int bits;
+  private final long[][] keys;
+  private final long seed;
+
+  public LatinHypercubeSampler(int p, long size, DoubleRange domain, long seed) {
+    if (p < 1) {
+      throw new IllegalArgumentException("Number of dimensions should be at least 1: got %d".formatted(p));
+    }
+    if (size < 1 || size > 1L << 62) {
+      throw new IllegalArgumentException("Number of points should be in [1,2^62]: got %d".formatted(size));
+    }
+    this.p = p;
+    this.size = size;
+    this.domain = domain;
+    this.seed = seed;
+    bits = Math.max(1, 64 - Long.numberOfLeadingZeros(size - 1));
+    SplittableRandom random = new SplittableRandom(seed);
+    keys = new long[p][2 * ROUNDS];
+    for (int i = 0; i < p; i = i + 1) {
+      for (int j = 0; j < keys[i].length; j = j + 1) {
+        keys[i][j] = random.nextLong();
+      }
+    }
+  }
+
+  //the finalizer of SplitMix64
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  @Override
+  public double[] get(long index, double[] out) {
+    checkIndex(index);
+    for (int i = 0; i < p; i = i + 1) {
+      double jitter = (mix(mix(seed ^ index) + i) >>> 11) * 0x1p-53;
+      out[i] = domain.denormalize((permute(index, i) + jitter) / size);
+    }
+    return out;
+  }
+
+  @Override
+  public int p() {
+    return p;
+  }
+
+  //each round (multiplication by an odd number, addition, and a right xorshift, all modulo 2^bits) is a bijection
+  private long permute(long index, int dimension) {
+    long mask = (1L << bits) - 1;
+    long x = index;
+    do {
+      for (int r = 0; r < ROUNDS; r = r + 1) {
+        x = (x * (keys[dimension][2 * r] | 1) + keys[dimension][2 * r + 1]) & mask;
+        x = x ^ (x >>> (bits / 2 + 1));
+      }
+    } while (x >= size);
+    return x;
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+}
@@ -0,0 +1,141 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Evaluates the points of a unit (e.g., a walk) first with a cheap low-fidelity evaluator and then, with the full
+ * evaluator, only the points promoted by a {@link Rule}. The reference for the rules is the given reference q or, if
+ * {@code NaN}, the low-fidelity q of the first point of the unit; the tolerance is relative to the absolute value of
+ * the reference, but not smaller than an absolute tolerance, so that a reference close to 0 does not make the rules
+ * promote (almost) no point, for NEAR_REFERENCE, or (almost) all of them, for DISAGREEMENT. The saved time is
+ * estimated as the mean full-fidelity time times the number of points which have not been promoted, minus the overall
+ * low-fidelity time.
+ */
+public class MultiFidelity {
+
+  private final Evaluator lowFidelityEvaluator;
+  private final Evaluator fullFidelityEvaluator;
+  private final Rule rule;
+  private final int k;
+  private final double tolerance;
+  private final double absTolerance;
+  private final double referenceQ;
+  private final AtomicLong nOfPoints;
+  private final AtomicLong nOfPromoted;
+  private final AtomicLong lowFidelityNanos;
+  private final AtomicLong fullFidelityNanos;
+
+  public MultiFidelity(
+      Evaluator lowFidelityEvaluator,
+      Evaluator fullFidelityEvaluator,
+      Rule rule,
+      int k,
+      double tolerance,
+      double absTolerance,
+      double referenceQ
+  ) {
+    this.lowFidelityEvaluator = lowFidelityEvaluator;
+    this.fullFidelityEvaluator = fullFidelityEvaluator;
+    this.rule = rule;
+    this.k = k;
+    this.tolerance = tolerance;
+    this.absTolerance = absTolerance;
+    this.referenceQ = referenceQ;
+    nOfPoints = new AtomicLong();
+    nOfPromoted = new AtomicLong();
+    lowFidelityNanos = new AtomicLong();
+    fullFidelityNanos = new AtomicLong();
+  }
+
+  public enum Rule {
+    TOP_K, NEAR_REFERENCE, DISAGREEMENT
+  }
+
+  public record Evaluation(double lowFidelityQ, double q) {
+    public boolean promoted() {
+      return !Double.isNaN(q);
+    }
+  }
+
+  public static boolean[] promote(
+      Rule rule,
+      double[] qs,
+      int k,
+      double tolerance,
+      double absTolerance,
+      double referenceQ
+  ) {
+    boolean[] promoted = new boolean[qs.length];
+    if (qs.length == 0) {
+      return promoted;
+    }
+    double reference = Double.isNaN(referenceQ) ? qs[0] : referenceQ;
+    double delta = Math.max(tolerance * Math.abs(reference), absTolerance);
+    switch (rule) {
+      case TOP_K -> IntStream.range(0, qs.length)
+          .boxed()
+          .sorted(Comparator.comparingDouble((Integer i) -> qs[i]).reversed())
+          .limit(k)
+          .forEach(i -> promoted[i] = true);
+      case NEAR_REFERENCE -> {
+        for (int i = 0; i < qs.length; i = i + 1) {
+          promoted[i] = Math.abs(qs[i] - reference) <= delta;
+        }
+      }
+      case DISAGREEMENT -> {
+        for (int i = 1; i < qs.length; i = i + 1) {
+          if (Math.abs(qs[i] - qs[i - 1]) > delta) {
+            promoted[i - 1] = true;
+            promoted[i] = true;
+          }
+        }
+      }
+    }
+    return promoted;
+  }
+
+  public Evaluation[] evaluate(String target, List<double[]> genotypes) {
+    double[] lowFidelityQs = new double[genotypes.size()];
+    long startingT = System.nanoTime();
+    for (int i = 0; i < genotypes.size(); i = i + 1) {
+      lowFidelityQs[i] = lowFidelityEvaluator.evaluate(target, genotypes.get(i));
+    }
+    lowFidelityNanos.addAndGet(System.nanoTime() - startingT);
+    boolean[] promoted = promote(rule, lowFidelityQs, k, tolerance, absTolerance, referenceQ);
+    Evaluation[] evaluations = new Evaluation[genotypes.size()];
+    for (int i = 0; i < genotypes.size(); i = i + 1) {
+      double q = Double.NaN;
+      if (promoted[i]) {
+        startingT = System.nanoTime();
+        q = fullFidelityEvaluator.evaluate(target, genotypes.get(i));
+        fullFidelityNanos.addAndGet(System.nanoTime() - startingT);
+        nOfPromoted.incrementAndGet();
+      }
+      evaluations[i] = new Evaluation(lowFidelityQs[i], q);
+    }
+    nOfPoints.addAndGet(genotypes.size());
+    return evaluations;
+  }
+
+  public double savedSeconds() {
+    if (nOfPromoted.get() == 0) {
+      return Double.NaN;
+    }
+    double meanFullFidelityNanos = (double) fullFidelityNanos.get() / (double) nOfPromoted.get();
+    return (meanFullFidelityNanos * (nOfPoints.get() - nOfPromoted.get()) - lowFidelityNanos.get()) / 1e9;
+  }
+
+  @Override
+  public String toString() {
+    return "%d/%d points promoted; %.1fs at low fidelity, %.1fs at full fidelity, ~%.1fs saved".formatted(
+        nOfPromoted.get(),
+        nOfPoints.get(),
+        lowFidelityNanos.get() / 1e9,
+        fullFidelityNanos.get() / 1e9,
+        savedSeconds()
+    );
+  }
+}
@@ -1,45 +1,202 @@
 package io.github.ericmedvet.respap.hrefla;
 
-import io.github.ericmedvet.jgea.core.IndependentFactory;
-import io.github.ericmedvet.jgea.core.distance.Distance;
-import io.github.ericmedvet.jgea.core.distance.LNorm;
-import io.github.ericmedvet.jgea.core.operator.Mutation;
-import io.github.ericmedvet.jgea.core.representation.sequence.FixedLengthListFactory;
-import io.github.ericmedvet.jgea.core.representation.sequence.numeric.GaussianMutation;
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
-import java.util.Random;
-import java.util.random.RandomGenerator;
-import java.util.stream.IntStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
 
 /**
+ * Estimates, by Monte Carlo, the expected Euclidean distance between a genotype and its gaussian mutation, for
+ * several genotype sizes {@code p} and mutation strengths {@code sigma}, with confidence intervals: it helps in
+ * choosing {@code --destinationDistance} and {@code --nOfSteps} of {@link Starter}. Since the distance does not depend
+ * on the genotype, each sample is just {@code sigma} times the norm of a vector of {@code p} standard normal values.
+ * Samples are split in chunks evaluated in parallel, each with its own generator split, in order, from a seeded one:
+ * hence, results depend on the seed but not on the number of threads.
+ *
  * @author "Eric Medvet" on 2023/01/18 for 2022-hybrid-robot-evolution-fitness-landscape-analysis
  */
-public class MutationDistanceAssesser {
+public class MutationDistanceAssesser implements Runnable {
+
+  private final static Logger L = Logger.getLogger(MutationDistanceAssesser.class.getName());
+  private final static int CHUNK_SIZE = 1 << 14;
+
+  @Parameter(
+      names = {"--ps", "-p"},
+      description = "Sizes of the genotype"
+  )
+  public List<Integer> ps = List.of(10, 25, 50, 100, 400);
+  @Parameter(
+      names = {"--sigmas", "-s"},
+      description = "Standard deviations of the gaussian mutation"
+  )
+  public List<Double> sigmas = List.of(0.05, 0.1, 0.2, 0.3, 0.35, 0.4, 0.5);
+  @Parameter(
+      names = {"--nOfSamples", "-n"},
+      description = "Number of samples for each combination of p and sigma"
+  )
+  public List<Integer> nOfSamples = List.of(1000000);
+  @Parameter(
+      names = {"--confidence"},
+      description = "Confidence level of the intervals of the mean distance"
+  )
+  public double confidence = 0.95;
+  @Parameter(
+      names = {"--nOfThreads"},
+      description = "Number of threads"
+  )
+  public int nOfThreads = Runtime.getRuntime().availableProcessors();
+  @Parameter(
+      names = {"--randomSeed"},
+      description = "Seed of the random generator"
+  )
+  public int randomSeed = 1;
+
+  private record Moments(long n, double sum, double sumOfSquares) {
+    Moments merge(Moments other) {
+      return new Moments(n + other.n, sum + other.sum, sumOfSquares + other.sumOfSquares);
+    }
+
+    double mean() {
+      return sum / n;
+    }
+
+    double sd() {
+      return Math.sqrt(Math.max(0, (sumOfSquares - sum * sum / n) / (n - 1)));
+    }
+  }
 
   public static void main(String[] args) {
-    int n = 1000;
-    List<Double> sigmas = List.of(0.05,0.1, 0.2, 0.3, 0.35,0.4,0.5);
-    List<Integer> ps = List.of(10, 25, 50, 100, 400);
-    Distance<double[]> lNorm2 = new LNorm(2d);
-    Distance<List<Double>> distance = (v1, v2) -> lNorm2.apply(
-        v1.stream().mapToDouble(v -> v).toArray(),
-        v2.stream().mapToDouble(v -> v).toArray()
+    try {
+      MutationDistanceAssesser assesser = new MutationDistanceAssesser();
+      JCommander.newBuilder()
+          .addObject(assesser)
+          .build()
+          .parse(args);
+      assesser.run();
+    } catch (ParameterException e) {
+      e.usage();
+      L.severe(String.format("Cannot read command line options: %s", e));
+      System.exit(-1);
+    } catch (RuntimeException e) {
+      L.severe(e.getClass().getSimpleName() + ": " + e.getMessage());
+      System.exit(-1);
+    }
+  }
+
+  private static Moments sample(int p, double sigma, int n, SplittableRandom random) {
+    double[] zs = new double[p];
+    double sum = 0;
+    double sumOfSquares = 0;
+    for (int i = 0; i < n; i = i + 1) {
+      for (int j = 0; j < p; j = j + 1) {
+        zs[j] = random.nextGaussian();
+      }
+      double d = sigma * Math.sqrt(squaredNorm(zs));
+      sum = sum + d;
+      sumOfSquares = sumOfSquares + d * d;
+    }
+    return new Moments(n, sum, sumOfSquares);
+  }
+
+  private static double squaredNorm(double[] v) {
+    //independent accumulators let the JIT overlap the multiply-adds
+    double s0 = 0;
+    double s1 = 0;
+    double s2 = 0;
+    double s3 = 0;
+    int j = 0;
+    for (; j + 3 < v.length; j = j + 4) {
+      s0 = s0 + v[j] * v[j];
+      s1 = s1 + v[j + 1] * v[j + 1];
+      s2 = s2 + v[j + 2] * v[j + 2];
+      s3 = s3 + v[j + 3] * v[j + 3];
+    }
+    for (; j < v.length; j = j + 1) {
+      s0 = s0 + v[j] * v[j];
+    }
+    return s0 + s1 + s2 + s3;
+  }
+
+  //Acklam's rational approximation of the inverse of the standard normal CDF, with relative error below 1.15e-9
+  static double normalQuantile(double q) {
+    double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02, 1.383577518672690e+02,
+        -3.066479806614716e+01, 2.506628277459239e+00};
+    double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02, 6.680131188771972e+01,
+        -1.328068155288572e+01};
+    double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00, -2.549732539343734e+00,
+        4.374664141464968e+00, 2.938163982698783e+00};
+    double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00, 3.754408661907416e+00};
+    double low = 0.02425;
+    if (q < low) {
+      double x = Math.sqrt(-2 * Math.log(q));
+      return (((((c[0] * x + c[1]) * x + c[2]) * x + c[3]) * x + c[4]) * x + c[5]) /
+          ((((d[0] * x + d[1]) * x + d[2]) * x + d[3]) * x + 1);
+    }
+    if (q > 1 - low) {
+      return -normalQuantile(1 - q);
+    }
+    double x = q - 0.5;
+    double r = x * x;
+    return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * x /
+        (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+  }
+
+  @Override
+  public void run() {
+    if (confidence <= 0 || confidence >= 1) {
+      throw new IllegalArgumentException("Confidence should be in ]0,1[: got %f".formatted(confidence));
+    }
+    double z = normalQuantile(0.5 + confidence / 2d);
+    ForkJoinPool pool = new ForkJoinPool(nOfThreads);
+    SplittableRandom random = new SplittableRandom(randomSeed);
+    System.out.printf(Locale.ROOT, "%4s %6s %9s %8s %8s %8s %8s %7s%n", "p", "sigma", "n", "mean", "sd", "ciLow",
+        "ciHigh", "seconds"
     );
-    RandomGenerator rnd = new Random();
-    for (int p : ps) {
-      IndependentFactory<List<Double>> factory = new FixedLengthListFactory<>(p, r -> r.nextDouble(-1, 1));
-      for (double sigma : sigmas) {
-        Mutation<List<Double>> mutation = new GaussianMutation(sigma);
-        System.out.printf(Locale.ROOT,"%3d %5.3f %6.3f%n",
-            p, sigma,
-            IntStream.range(0, n).mapToDouble(i -> {
-              List<Double> g = factory.build(rnd);
-              return distance.apply(g, mutation.mutate(g, rnd));
-            }).average().orElseThrow()
-        );
+    try {
+      for (int n : nOfSamples) {
+        for (int p : ps) {
+          for (double sigma : sigmas) {
+            long startingT = System.nanoTime();
+            List<Future<Moments>> futures = new ArrayList<>();
+            for (int from = 0; from < n; from = from + CHUNK_SIZE) {
+              int chunkN = Math.min(CHUNK_SIZE, n - from);
+              SplittableRandom chunkRandom = random.split();
+              futures.add(pool.submit(() -> sample(p, sigma, chunkN, chunkRandom)));
+            }
+            Moments moments = new Moments(0, 0, 0);
+            for (Future<Moments> future : futures) {
+              moments = moments.merge(future.get());
+            }
+            double halfWidth = z * moments.sd() / Math.sqrt(moments.n());
+            System.out.printf(
+                Locale.ROOT,
+                "%4d %6.3f %9d %8.5f %8.5f %8.5f %8.5f %7.2f%n",
+                p,
+                sigma,
+                moments.n(),
+                moments.mean(),
+                moments.sd(),
+                moments.mean() - halfWidth,
+                moments.mean() + halfWidth,
+                (System.nanoTime() - startingT) / 1e9
+            );
+          }
+        }
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      pool.shutdown();
     }
   }
 }
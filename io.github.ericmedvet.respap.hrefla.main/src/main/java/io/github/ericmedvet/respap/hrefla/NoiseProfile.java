@@ -0,0 +1,119 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The run-to-run variability of the fitness of the genotypes of some targets on some tasks, as measured by
+ * {@link NoiseProfiler}, together with the number of repeated evaluations needed for the mean fitness of a genotype to
+ * be accurate enough: it is 1 for deterministic evaluations. Profiles are saved as {@code ;}-separated values.
+ */
+public class NoiseProfile {
+
+  private final static List<String> HEADER = List.of(
+      "target",
+      "task",
+      "cFunction",
+      "nOfGenotypes",
+      "nOfRepeats",
+      "sd",
+      "maxSd",
+      "deterministic",
+      "repeats"
+  );
+
+  private final Map<List<String>, Entry> entries;
+
+  public NoiseProfile(List<Entry> entries) {
+    this.entries = new LinkedHashMap<>();
+    entries.forEach(e -> this.entries.put(List.of(e.target(), e.task()), e));
+  }
+
+  /**
+   * The profile of a target on a task: {@code sd} is the pooled standard deviation of the fitness of the same
+   * genotype, {@code maxSd} the largest one among the profiled genotypes.
+   */
+  public record Entry(
+      String target,
+      String task,
+      String cFunction,
+      int nOfGenotypes,
+      int nOfRepeats,
+      double sd,
+      double maxSd,
+      boolean deterministic,
+      int repeats
+  ) {}
+
+  public static NoiseProfile read(Path path) throws IOException {
+    try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+         CSVParser parser = CSVFormat.Builder.create().setDelimiter(';').setHeader().build().parse(reader)) {
+      List<Entry> entries = parser.stream()
+          .map(NoiseProfile::entry)
+          .toList();
+      return new NoiseProfile(entries);
+    }
+  }
+
+  private static Entry entry(CSVRecord record) {
+    return new Entry(
+        record.get("target"),
+        record.get("task"),
+        record.get("cFunction"),
+        Integer.parseInt(record.get("nOfGenotypes")),
+        Integer.parseInt(record.get("nOfRepeats")),
+        Double.parseDouble(record.get("sd")),
+        Double.parseDouble(record.get("maxSd")),
+        Boolean.parseBoolean(record.get("deterministic")),
+        Integer.parseInt(record.get("repeats"))
+    );
+  }
+
+  public List<Entry> entries() {
+    return List.copyOf(entries.values());
+  }
+
+  public Entry get(String target, String task) {
+    return entries.get(List.of(target, task));
+  }
+
+  @Override
+  public String toString() {
+    return "%d targets and tasks, of which %d deterministic".formatted(
+        entries.size(),
+        entries.values().stream().filter(Entry::deterministic).count()
+    );
+  }
+
+  public void write(Path path) throws IOException {
+    try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+         CSVPrinter printer = new CSVPrinter(writer, CSVFormat.Builder.create().setDelimiter(";").build())) {
+      printer.printRecord(HEADER);
+      for (Entry e : entries.values()) {
+        printer.printRecord(
+            e.target(),
+            e.task(),
+            e.cFunction(),
+            e.nOfGenotypes(),
+            e.nOfRepeats(),
+            e.sd(),
+            e.maxSd(),
+            e.deterministic(),
+            e.repeats()
+        );
+      }
+    }
+  }
+}
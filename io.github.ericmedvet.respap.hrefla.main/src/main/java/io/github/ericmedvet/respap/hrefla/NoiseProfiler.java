@@ -0,0 +1,296 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import io.github.ericmedvet.robotevo2d.main.PreparedNamedBuilder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Measures, for each target and task, the run-to-run variability of the fitness of the same genotype, by simulating
+ * several genotypes several times, in parallel, and saves it as a {@link NoiseProfile}: {@link Starter} and
+ * {@link GridExploration} read it (with {@code --noiseProfile}) for evaluating each point of a target on a task as
+ * many times as needed for the confidence interval of its mean fitness to be narrow enough. Genotypes are the bests of
+ * phase 1 or, without an input file, random genotypes of the given targets.
+ */
+public class NoiseProfiler implements Runnable {
+
+  private final static Logger L = Logger.getLogger(NoiseProfiler.class.getName());
+
+  @Parameter(
+      names = {"--inputFile", "-if"},
+      description = "Path of the file with the results of the evolution, whose bests are profiled; empty for " +
+          "profiling random genotypes of --target"
+  )
+  public String inputFile = "";
+  @Parameter(
+      names = {"--iterations", "-i"},
+      description = "Iterations of the bests to profile; empty for all the iterations"
+  )
+  public List<Integer> iterations = List.of();
+  @Parameter(
+      names = {"--targetFilter"},
+      description = "Regular expression matching (part of) the targets of the bests to profile; empty for all the " +
+          "targets"
+  )
+  public String targetFilter = "";
+  @Parameter(
+      names = {"--target"},
+      description = "Target whose random genotypes are profiled, without an input file; repeat for several " +
+          "targets; none for the default target of GridExploration",
+      splitter = Starter.LiteralSplitter.class
+  )
+  public List<String> targets = List.of();
+  @Parameter(
+      names = {"--task"},
+      description = "Task description; repeat for profiling several tasks",
+      splitter = Starter.LiteralSplitter.class
+  )
+  public List<String> tasks = List.of("s.task.locomotion(terrain = s.t.flat())");
+  @Parameter(
+      names = {"--cFunction"},
+      description = "Function computing the fitness from the outcome of a task"
+  )
+  public String cFunction = "s.task.locomotion.xVelocity()";
+  @Parameter(
+      names = {"--nOfGenotypes", "-g"},
+      description = "Number of genotypes profiled for each target"
+  )
+  public int nOfGenotypes = 10;
+  @Parameter(
+      names = {"--nOfRepeats", "-r"},
+      description = "Number of simulations of each genotype"
+  )
+  public int nOfRepeats = 10;
+  @Parameter(
+      names = {"--halfWidth"},
+      description = "Max half width of the confidence interval of the mean fitness of a point"
+  )
+  public double halfWidth = 0.01;
+  @Parameter(
+      names = {"--confidence"},
+      description = "Confidence level of the interval of the mean fitness of a point"
+  )
+  public double confidence = 0.95;
+  @Parameter(
+      names = {"--maxRepeats"},
+      description = "Max number of evaluations of a point"
+  )
+  public int maxRepeats = 20;
+  @Parameter(
+      names = {"--nOfThreads"},
+      description = "Number of threads"
+  )
+  public int nOfThreads = Runtime.getRuntime().availableProcessors();
+  @Parameter(
+      names = {"--randomSeed"},
+      description = "Seed of the random generator choosing or building the genotypes"
+  )
+  public int randomSeed = 1;
+  @Parameter(
+      names = {"--outputFile", "-of"},
+      description = "Path of the file for the noise profile"
+  )
+  public String outputFile = "noise-profile.csv";
+  @Parameter(
+      names = {"--builderCacheSize"},
+      description = "Max number of built mappers, tasks, and cFunctions kept for reuse"
+  )
+  public int builderCacheSize = 10;
+
+  public static void main(String[] args) {
+    try {
+      NoiseProfiler profiler = new NoiseProfiler();
+      JCommander.newBuilder()
+          .addObject(profiler)
+          .build()
+          .parse(args);
+      profiler.run();
+    } catch (ParameterException e) {
+      e.usage();
+      L.severe(String.format("Cannot read command line options: %s", e));
+      System.exit(-1);
+    } catch (RuntimeException e) {
+      L.severe(e.getClass().getSimpleName() + ": " + e.getMessage());
+      System.exit(-1);
+    }
+  }
+
+  private SortedMap<String, List<double[]>> genotypes(CachedBuilder builder, Random random) {
+    SortedMap<String, List<double[]>> genotypes = new TreeMap<>();
+    if (!inputFile.isEmpty()) {
+      List<BestReader.Best> bests;
+      try {
+        bests = BestReader.read(
+            Path.of(inputFile),
+            new BestReader.Filter(
+                iterations.isEmpty() ? null : Set.copyOf(iterations),
+                null,
+                targetFilter.isEmpty() ? null : Pattern.compile(targetFilter)
+            ),
+            false
+        );
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Cannot open input file %s: %s".formatted(inputFile, e));
+      }
+      bests.forEach(b -> genotypes.computeIfAbsent(b.target(), t -> new ArrayList<>()).add(b.genotype()));
+      genotypes.values().forEach(gs -> Collections.shuffle(gs, random));
+      genotypes.replaceAll((t, gs) -> gs.subList(0, Math.min(nOfGenotypes, gs.size())));
+    } else {
+      for (String target : targets.isEmpty() ? List.of(GridExploration.LEGGED_OPEN_2_MAPPER) : targets) {
+        int p = builder.mapper(target).exampleInput().size();
+        List<double[]> gs = new ArrayList<>();
+        for (int i = 0; i < nOfGenotypes; i = i + 1) {
+          gs.add(random.doubles(p, -1, 1).toArray());
+        }
+        genotypes.put(target, gs);
+      }
+    }
+    return genotypes;
+  }
+
+  private NoiseProfile.Entry entry(String target, String task, List<double[]> allQss, double z) {
+    //non-finite qs (e.g., of diverged simulations) would make the sd NaN, hence they are skipped
+    List<double[]> qss = new ArrayList<>();
+    int nOfSkipped = 0;
+    for (double[] qs : allQss) {
+      double[] finiteQs = Arrays.stream(qs).filter(Double::isFinite).toArray();
+      nOfSkipped = nOfSkipped + qs.length - finiteQs.length;
+      if (finiteQs.length >= 2) {
+        qss.add(finiteQs);
+      }
+    }
+    if (nOfSkipped > 0) {
+      L.warning("%s on %s: %d non-finite qs skipped, %d of %d genotypes left".formatted(
+          target,
+          task,
+          nOfSkipped,
+          qss.size(),
+          allQss.size()
+      ));
+    }
+    if (qss.isEmpty()) {
+      return null;
+    }
+    boolean deterministic = true;
+    double sumOfVariances = 0;
+    double maxSd = 0;
+    for (double[] qs : qss) {
+      double mean = Arrays.stream(qs).average().orElse(Double.NaN);
+      double variance = Arrays.stream(qs).map(q -> (q - mean) * (q - mean)).sum() / (qs.length - 1);
+      deterministic = deterministic && Arrays.stream(qs)
+          .allMatch(q -> Double.doubleToLongBits(q) == Double.doubleToLongBits(qs[0]));
+      sumOfVariances = sumOfVariances + variance;
+      maxSd = Math.max(maxSd, Math.sqrt(variance));
+    }
+    double sd = Math.sqrt(sumOfVariances / qss.size());
+    int repeats = 1;
+    if (!deterministic) {
+      repeats = (int) Math.min(maxRepeats, Math.max(1, Math.ceil(Math.pow(z * sd / halfWidth, 2))));
+    }
+    return new NoiseProfile.Entry(
+        target,
+        task,
+        cFunction,
+        qss.size(),
+        nOfRepeats,
+        sd,
+        maxSd,
+        deterministic,
+        repeats
+    );
+  }
+
+  @Override
+  public void run() {
+    if (nOfRepeats < 2) {
+      throw new IllegalArgumentException("Number of repeats should be at least 2: got %d".formatted(nOfRepeats));
+    }
+    if (confidence <= 0 || confidence >= 1) {
+      throw new IllegalArgumentException("Confidence should be in ]0,1[: got %f".formatted(confidence));
+    }
+    double z = MutationDistanceAssesser.normalQuantile(0.5 + confidence / 2d);
+    CachedBuilder builder = new CachedBuilder(PreparedNamedBuilder.get(), builderCacheSize);
+    EngineFactory engineFactory = EngineFactory.fromServiceLoader();
+    SortedMap<String, List<double[]>> genotypes = genotypes(builder, new Random(randomSeed));
+    if (genotypes.isEmpty()) {
+      throw new IllegalArgumentException("No genotypes to profile");
+    }
+    //one simulation per job, so that the threads are kept busy also with few genotypes
+    ExecutorService executorService = Executors.newFixedThreadPool(nOfThreads);
+    Map<List<String>, List<List<Future<Double>>>> futures = new LinkedHashMap<>();
+    for (String task : tasks) {
+      Evaluator.Simulator simulator = Evaluator.local(builder, engineFactory, task, List.of(cFunction));
+      genotypes.forEach((target, gs) -> {
+        List<List<Future<Double>>> targetFutures = new ArrayList<>();
+        for (double[] genotype : gs) {
+          List<Future<Double>> genotypeFutures = new ArrayList<>();
+          for (int r = 0; r < nOfRepeats; r = r + 1) {
+            genotypeFutures.add(executorService.submit(() -> simulator.simulate(target, genotype)[0]));
+          }
+          targetFutures.add(genotypeFutures);
+        }
+        futures.put(List.of(target, task), targetFutures);
+      });
+    }
+    L.info("%d simulations of %d targets on %d tasks submitted".formatted(
+        futures.values().stream().flatMap(List::stream).mapToInt(List::size).sum(),
+        genotypes.size(),
+        tasks.size()
+    ));
+    List<NoiseProfile.Entry> entries = new ArrayList<>();
+    try {
+      for (Map.Entry<List<String>, List<List<Future<Double>>>> e : futures.entrySet()) {
+        List<double[]> qss = new ArrayList<>();
+        for (List<Future<Double>> genotypeFutures : e.getValue()) {
+          double[] qs = new double[genotypeFutures.size()];
+          for (int r = 0; r < qs.length; r = r + 1) {
+            qs[r] = genotypeFutures.get(r).get();
+          }
+          qss.add(qs);
+        }
+        NoiseProfile.Entry entry = entry(e.getKey().get(0), e.getKey().get(1), qss, z);
+        if (entry == null) {
+          L.warning("%s on %s: not profiled, as no genotype has at least 2 finite qs".formatted(
+              e.getKey().get(0),
+              e.getKey().get(1)
+          ));
+          continue;
+        }
+        L.info("%s on %s: sd=%.4f (max %.4f), %s, %d repeats".formatted(
+            entry.target(),
+            entry.task(),
+            entry.sd(),
+            entry.maxSd(),
+            entry.deterministic() ? "deterministic" : "not deterministic",
+            entry.repeats()
+        ));
+        entries.add(entry);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      executorService.shutdownNow();
+    }
+    NoiseProfile noiseProfile = new NoiseProfile(entries);
+    try {
+      noiseProfile.write(Path.of(outputFile));
+    } catch (IOException e) {
+      L.severe("Cannot write noise profile %s: %s".formatted(outputFile, e));
+      return;
+    }
+    L.info("Noise profile saved to %s: %s".formatted(outputFile, noiseProfile));
+  }
+}
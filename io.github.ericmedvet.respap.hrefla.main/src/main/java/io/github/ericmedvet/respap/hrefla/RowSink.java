@@ -0,0 +1,52 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A destination for the output rows of a run. {@link #flush()} makes the rows written so far (or, for formats written
+ * in blocks of rows, the ones of the complete blocks) durable and tells the
+ * {@link CommitListener}, if any, how many they are and the length of the output which contains them, so that the
+ * output can be truncated to that length when resuming.
+ */
+public interface RowSink extends Flushable, Closeable {
+
+  enum Format {CSV, COLUMNAR}
+
+  enum Type {INT, DOUBLE, STRING, DICTIONARY}
+
+  record Column(String name, Type type) {}
+
+  /**
+   * Receives, after each forced write of a sink, the number of rows written since the sink was opened which are
+   * durable and the length of the output which contains them.
+   */
+  @FunctionalInterface
+  interface CommitListener {
+    void committed(long nOfRows, long outputLength) throws IOException;
+  }
+
+  static RowSink of(Format format, Path path, List<Column> columns, boolean append) throws IOException {
+    return switch (format) {
+      case CSV -> new CsvRowSink(path, columns, append);
+      case COLUMNAR -> new ColumnarRowSink(path, columns, append);
+    };
+  }
+
+  /**
+   * Wraps a sink in an {@link AsyncRowSink}, unless {@code queueSize} is not positive.
+   */
+  static RowSink asynchronous(RowSink sink, int queueSize, int flushRows, long flushMillis) {
+    if (queueSize <= 0) {
+      return sink;
+    }
+    return new AsyncRowSink(sink, queueSize, flushRows, flushMillis);
+  }
+
+  void onCommit(CommitListener listener);
+
+  void write(List<?> values) throws IOException;
+}
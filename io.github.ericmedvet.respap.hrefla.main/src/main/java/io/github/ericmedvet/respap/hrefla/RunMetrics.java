@@ -0,0 +1,189 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Tracks the progress of a run (completed and in-flight tasks, throughput, depth of the executor queue, ETA with
+ * respect to the planned tasks) and, for each target, a histogram of the simulation latencies. Histograms have 4
+ * log-spaced buckets per power of 2 of the latency in nanoseconds, hence percentiles are approximated from above within
+ * 25%. A summary is logged and, if a path is given, appended to a CSV file at each interval and on close.
+ */
+public class RunMetrics implements Closeable {
+
+  private final static Logger L = Logger.getLogger(RunMetrics.class.getName());
+  private final static int SUB_BUCKETS = 4;
+  private final static int N_OF_BUCKETS = 64 * SUB_BUCKETS;
+
+  private final IntSupplier queueDepth;
+  private final CSVPrinter printer;
+  private final Map<String, AtomicLongArray> histograms;
+  private final AtomicLong nOfSubmitted;
+  private final AtomicLong nOfCompleted;
+  private final ScheduledExecutorService scheduler;
+  private final long startingNanos;
+  private volatile long nOfTasks;
+  private long lastSummaryNanos;
+  private long lastSummaryNOfCompleted;
+
+  public RunMetrics(Path path, long intervalMillis, IntSupplier queueDepth) throws IOException {
+    this.queueDepth = queueDepth;
+    if (path != null) {
+      printer = new CSVPrinter(new FileWriter(path.toFile()), CSVFormat.Builder.create().setDelimiter(";").build());
+      printer.printRecord(
+          "elapsed", "completed", "inFlight", "queueDepth", "rate", "eta", "target", "n", "p50", "p90", "p99", "max"
+      );
+    } else {
+      printer = null;
+    }
+    histograms = new ConcurrentSkipListMap<>();
+    nOfSubmitted = new AtomicLong();
+    nOfCompleted = new AtomicLong();
+    startingNanos = System.nanoTime();
+    lastSummaryNanos = startingNanos;
+    scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "run-metrics");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleAtFixedRate(this::summarize, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private static int bucket(long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (int) Math.max(0, nanos);
+    }
+    int msb = 63 - Long.numberOfLeadingZeros(nanos);
+    int sub = (int) ((nanos >>> (msb - 2)) & (SUB_BUCKETS - 1));
+    return msb * SUB_BUCKETS + sub;
+  }
+
+  private static double upperBoundMillis(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return (bucket + 1) / 1e6;
+    }
+    int msb = bucket / SUB_BUCKETS;
+    int sub = bucket % SUB_BUCKETS;
+    return ((double) (1L << msb) * (1d + (sub + 1d) / SUB_BUCKETS)) / 1e6;
+  }
+
+  private static double percentileMillis(long[] counts, long n, double p) {
+    long rank = (long) Math.ceil(p * n);
+    long cumulated = 0;
+    for (int i = 0; i < counts.length; i = i + 1) {
+      cumulated = cumulated + counts[i];
+      if (cumulated >= rank && counts[i] > 0) {
+        return upperBoundMillis(i);
+      }
+    }
+    return Double.NaN;
+  }
+
+  @Override
+  public void close() throws IOException {
+    scheduler.shutdownNow();
+    summarize();
+    if (printer != null) {
+      printer.close();
+    }
+  }
+
+  public void completed(int n) {
+    nOfCompleted.addAndGet(n);
+  }
+
+  public long inFlight() {
+    return nOfSubmitted.get() - nOfCompleted.get();
+  }
+
+  public void planned(long nOfTasks) {
+    this.nOfTasks = nOfTasks;
+  }
+
+  public void record(String target, long nanos) {
+    histograms.computeIfAbsent(target, t -> new AtomicLongArray(N_OF_BUCKETS)).incrementAndGet(bucket(nanos));
+  }
+
+  public void submitted(int n) {
+    nOfSubmitted.addAndGet(n);
+  }
+
+  private synchronized void summarize() {
+    long nanos = System.nanoTime();
+    long completed = nOfCompleted.get();
+    double elapsed = (nanos - startingNanos) / 1e9;
+    double intervalSeconds = (nanos - lastSummaryNanos) / 1e9;
+    double rate = intervalSeconds > 0 ? (completed - lastSummaryNOfCompleted) / intervalSeconds : Double.NaN;
+    double overallRate = elapsed > 0 ? completed / elapsed : Double.NaN;
+    double eta = (nOfTasks - completed) / (rate > 0 ? rate : overallRate);
+    lastSummaryNanos = nanos;
+    lastSummaryNOfCompleted = completed;
+    L.info("%d/%d done (%.1f%%), %.2f/s, %d in flight, %d queued, ETA %.0fs".formatted(
+        completed,
+        nOfTasks,
+        100d * completed / nOfTasks,
+        rate,
+        inFlight(),
+        queueDepth.getAsInt(),
+        eta
+    ));
+    try {
+      if (printer != null && histograms.isEmpty()) {
+        printer.printRecord(
+            elapsed, completed, inFlight(), queueDepth.getAsInt(), rate, eta,
+            "", 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN
+        );
+      }
+      for (Map.Entry<String, AtomicLongArray> entry : histograms.entrySet()) {
+        long[] counts = new long[N_OF_BUCKETS];
+        long n = 0;
+        int maxBucket = 0;
+        for (int i = 0; i < N_OF_BUCKETS; i = i + 1) {
+          counts[i] = entry.getValue().get(i);
+          n = n + counts[i];
+          if (counts[i] > 0) {
+            maxBucket = i;
+          }
+        }
+        double p50 = percentileMillis(counts, n, 0.5);
+        double p90 = percentileMillis(counts, n, 0.9);
+        double p99 = percentileMillis(counts, n, 0.99);
+        L.fine("Latency for %s: n=%d p50=%.1fms p90=%.1fms p99=%.1fms".formatted(entry.getKey(), n, p50, p90, p99));
+        if (printer != null) {
+          printer.printRecord(
+              elapsed, completed, inFlight(), queueDepth.getAsInt(), rate, eta,
+              entry.getKey(), n, p50, p90, p99, upperBoundMillis(maxBucket)
+          );
+        }
+      }
+      if (printer != null) {
+        printer.flush();
+      }
+    } catch (IOException e) {
+      L.warning("Cannot save metrics: %s".formatted(e));
+    }
+  }
+
+  public Evaluator.Simulator timed(Evaluator.Simulator simulator) {
+    return (target, genotype) -> {
+      long startingT = System.nanoTime();
+      double[] qs = simulator.simulate(target, genotype);
+      record(target, System.nanoTime() - startingT);
+      return qs;
+    };
+  }
+}
@@ -0,0 +1,27 @@
+package io.github.ericmedvet.respap.hrefla;
+
+/**
+ * A finite, deterministic sequence of points in a hypercube, addressed by index: a point can be regenerated from its
+ * index alone, hence disjoint ranges of indexes can be evaluated separately and a run can be resumed from the indexes
+ * of its completed points.
+ */
+public interface Sampler {
+
+  enum Kind {GRID, HALTON, SOBOL, LHS, SLICE}
+
+  default double[] get(long index) {
+    return get(index, new double[p()]);
+  }
+
+  double[] get(long index, double[] out);
+
+  int p();
+
+  long size();
+
+  default void checkIndex(long index) {
+    if (index < 0 || index >= size()) {
+      throw new IndexOutOfBoundsException("Index %d out of bounds [0,%d[".formatted(index, size()));
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import io.github.ericmedvet.mrsim2d.core.util.DoubleRange;
+
+import java.util.Arrays;
+
+/**
+ * A regular grid over a few (usually 2 or 3) genes of a base genotype, with the other genes held fixed at their base
+ * value: it is a {@link Grid} of the sliced genes, with the same mixed-radix index, embedded in the genotype space.
+ */
+public class SliceSampler implements Sampler {
+
+  private final double[] base;
+  private final int[] genes;
+  private final Grid grid;
+
+  public SliceSampler(double[] base, int[] genes, int nOfValuesPerDimension, DoubleRange domain) {
+    if (genes.length < 1) {
+      throw new IllegalArgumentException("At least one gene should be sliced");
+    }
+    if (Arrays.stream(genes).anyMatch(g -> g < 0 || g >= base.length)) {
+      throw new IllegalArgumentException("Sliced genes %s should be in [0,%d[".formatted(
+          Arrays.toString(genes),
+          base.length
+      ));
+    }
+    if (Arrays.stream(genes).distinct().count() < genes.length) {
+      throw new IllegalArgumentException("Sliced genes %s should be distinct".formatted(Arrays.toString(genes)));
+    }
+    this.base = Arrays.copyOf(base, base.length);
+    this.genes = Arrays.copyOf(genes, genes.length);
+    grid = new Grid(genes.length, nOfValuesPerDimension, domain);
+  }
+
+  @Override
+  public double[] get(long index, double[] out) {
+    checkIndex(index);
+    System.arraycopy(base, 0, out, 0, base.length);
+    double[] values = grid.values();
+    long remainder = index;
+    for (int gene : genes) {
+      out[gene] = values[(int) (remainder % values.length)];
+      remainder = remainder / values.length;
+    }
+    return out;
+  }
+
+  @Override
+  public int p() {
+    return base.length;
+  }
+
+  @Override
+  public long size() {
+    return grid.size();
+  }
+}
@@ -0,0 +1,170 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import io.github.ericmedvet.mrsim2d.core.util.DoubleRange;
+
+import java.util.SplittableRandom;
+
+/**
+ * The Sobol sequence over a hypercube, with up to 2^32 points: the point with index {@code n} is the xor of the
+ * direction numbers corresponding to the bits of {@code n}, for each dimension. The first dimension is the van der
+ * Corput sequence; the following ones use the primitive polynomials over GF(2) in increasing order (of degree, then of
+ * coefficients), with the initial direction numbers of Joe and Kuo (new-joe-kuo-6.21201) for the first 20 of them and
+ * odd numbers drawn from a fixed-seed generator for the others. Hence, the sequence does not depend on the number of
+ * dimensions, and any prefix of 2^k points is well balanced in the first dimensions.
+ */
+public class SobolSampler implements Sampler {
+
+  private final static int BITS = 32;
+  private final static int[][] JOE_KUO_M = {
+      {1},
+      {1, 3},
+      {1, 3, 1},
+      {1, 1, 1},
+      {1, 1, 3, 3},
+      {1, 3, 5, 13},
+      {1, 1, 5, 5, 17},
+      {1, 1, 5, 5, 5},
+      {1, 1, 7, 11, 19},
+      {1, 1, 5, 1, 1},
+      {1, 1, 1, 3, 11},
+      {1, 3, 5, 5, 31},
+      {1, 3, 3, 9, 7, 49},
+      {1, 1, 1, 15, 21, 21},
+      {1, 3, 1, 13, 27, 49},
+      {1, 1, 1, 15, 7, 5},
+      {1, 3, 1, 15, 13, 25},
+      {1, 1, 5, 5, 19, 61},
+      {1, 3, 7, 11, 23, 15, 103},
+      {1, 3, 7, 13, 13, 15, 69}
+  };
+
+  private final long[][] directions;
+  private final long size;
+  private final DoubleRange domain;
+
+  public SobolSampler(int p, long size, DoubleRange domain) {
+    if (p < 1) {
+      throw new IllegalArgumentException("Number of dimensions should be at least 1: got %d".formatted(p));
+    }
+    if (size < 1 || size > 1L << BITS) {
+      throw new IllegalArgumentException("Number of points should be in [1,2^%d]: got %d".formatted(BITS, size));
+    }
+    this.size = size;
+    this.domain = domain;
+    directions = new long[p][BITS];
+    for (int k = 0; k < BITS; k = k + 1) {
+      directions[0][k] = 1L << (BITS - 1 - k);
+    }
+    SplittableRandom random = new SplittableRandom(0);
+    int degree = 1;
+    long coefficients = 0;
+    for (int i = 1; i < p; i = i + 1) {
+      while (!isPrimitive(degree, coefficients)) {
+        coefficients = coefficients + 1;
+        if (coefficients >= 1L << (degree - 1)) {
+          degree = degree + 1;
+          coefficients = 0;
+        }
+      }
+      long[] m = new long[BITS];
+      for (int k = 0; k < degree && k < BITS; k = k + 1) {
+        m[k] = i - 1 < JOE_KUO_M.length ? JOE_KUO_M[i - 1][k] : (random.nextLong(1L << k) << 1) | 1;
+      }
+      for (int k = degree; k < BITS; k = k + 1) {
+        m[k] = m[k - degree] ^ (m[k - degree] << degree);
+        for (int j = 1; j < degree; j = j + 1) {
+          if (((coefficients >>> (degree - 1 - j)) & 1) == 1) {
+            m[k] = m[k] ^ (m[k - j] << j);
+          }
+        }
+      }
+      for (int k = 0; k < BITS; k = k + 1) {
+        directions[i][k] = m[k] << (BITS - 1 - k);
+      }
+      coefficients = coefficients + 1;
+      if (coefficients >= 1L << (degree - 1)) {
+        degree = degree + 1;
+        coefficients = 0;
+      }
+    }
+  }
+
+  //polynomial x^degree+a_1x^(degree-1)+...+a_(degree-1)x+1, with the a_j being the bits of coefficients, a_1 first
+  private static boolean isPrimitive(int degree, long coefficients) {
+    long polynomial = (1L << degree) | (coefficients << 1) | 1;
+    long order = (1L << degree) - 1;
+    if (power(2, order, polynomial, degree) != 1) {
+      return false;
+    }
+    long remainder = order;
+    for (long q = 2; remainder > 1; q = q + 1) {
+      if (q * q > remainder) {
+        //what is left is prime
+        q = remainder;
+      }
+      if (remainder % q == 0) {
+        if (power(2, order / q, polynomial, degree) == 1) {
+          return false;
+        }
+        while (remainder % q == 0) {
+          remainder = remainder / q;
+        }
+      }
+    }
+    return true;
+  }
+
+  //product of two polynomials over GF(2) modulo the given one
+  private static long multiply(long a, long b, long polynomial, int degree) {
+    long r = 0;
+    while (b != 0) {
+      if ((b & 1) == 1) {
+        r = r ^ a;
+      }
+      b = b >>> 1;
+      a = a << 1;
+      if (((a >>> degree) & 1) == 1) {
+        a = a ^ polynomial;
+      }
+    }
+    return r;
+  }
+
+  private static long power(long base, long exponent, long polynomial, int degree) {
+    long b = ((base >>> degree) & 1) == 1 ? base ^ polynomial : base;
+    long r = 1;
+    while (exponent > 0) {
+      if ((exponent & 1) == 1) {
+        r = multiply(r, b, polynomial, degree);
+      }
+      b = multiply(b, b, polynomial, degree);
+      exponent = exponent >>> 1;
+    }
+    return r;
+  }
+
+  @Override
+  public double[] get(long index, double[] out) {
+    checkIndex(index);
+    for (int i = 0; i < directions.length; i = i + 1) {
+      long x = 0;
+      for (int k = 0; index >>> k != 0; k = k + 1) {
+        if (((index >>> k) & 1) == 1) {
+          x = x ^ directions[i][k];
+        }
+      }
+      out[i] = domain.denormalize(Math.scalb((double) x, -BITS));
+    }
+    return out;
+  }
+
+  @Override
+  public int p() {
+    return directions.length;
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+}
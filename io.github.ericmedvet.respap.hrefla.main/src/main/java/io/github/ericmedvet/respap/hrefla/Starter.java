@@ -19,52 +19,26 @@ package io.github.ericmedvet.respap.hrefla;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
-import io.github.ericmedvet.jgea.experimenter.InvertibleMapper;
-import io.github.ericmedvet.jnb.core.NamedBuilder;
-import io.github.ericmedvet.mrsim2d.core.EmbodiedAgent;
-import io.github.ericmedvet.mrsim2d.core.engine.Engine;
-import io.github.ericmedvet.mrsim2d.core.tasks.Task;
-import io.github.ericmedvet.mrsim2d.core.util.DoubleRange;
+import com.beust.jcommander.converters.IParameterSplitter;
 import io.github.ericmedvet.robotevo2d.main.PreparedNamedBuilder;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVPrinter;
 
 import java.io.*;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Function;
-import java.util.function.Supplier;
+import java.util.function.ObjLongConsumer;
 import java.util.logging.Logger;
 import java.util.random.RandomGenerator;
+import java.util.regex.Pattern;
 import java.util.stream.IntStream;
 
 public class Starter implements Runnable {
 
   private final static Logger L = Logger.getLogger(Starter.class.getName());
 
-  private final static String VSR_TARGET_TEMPLATE = """
-      s.a.centralizedNumGridVSR(
-        body = s.a.vsr.gridBody(
-          sensorizingFunction = s.a.vsr.sf.directional(
-            headSensors = [s.s.sin(f = 0); s.s.d(a = -30; r = 10)];
-            nSensors = [s.s.ar(); s.s.rv(a = 0); s.s.rv(a = 90)];
-            sSensors = [s.s.d(a = -90)]
-          );
-          shape = %SHAPE%
-        );
-        function = %FUNCTION%
-      )
-      """;
-
   private final static String C_FUNCTION = "s.task.locomotion.xVelocity()";
 
-  private final static String MAPPER_TEMPLATE = "er.m.parametrizedHomoBrains(target=%TARGET%)";
-
   @Parameter(
       names = {"--inputFile", "-if"},
       description = "Path of the input file with the results of the evolution"
@@ -75,11 +49,49 @@ public class Starter implements Runnable {
       description = "Path of the file for the output"
   )
   public String outputFile = "";
+  @Parameter(
+      names = {"--outputFormat"},
+      description = "Format of the output file"
+  )
+  public RowSink.Format outputFormat = RowSink.Format.CSV;
+  @Parameter(
+      names = {"--outputQueueSize"},
+      description = "Max number of rows waiting to be written by the output thread; 0 for writing them in the thread " +
+          "collecting the results"
+  )
+  public int outputQueueSize = 10000;
+  @Parameter(
+      names = {"--outputFlushRows"},
+      description = "Number of rows after which the output thread flushes the output; 0 for never"
+  )
+  public int outputFlushRows = 0;
+  @Parameter(
+      names = {"--outputFlushMillis"},
+      description = "Milliseconds after which the output thread flushes the output; 0 for never"
+  )
+  public long outputFlushMillis = 60000;
   @Parameter(
       names = {"--iterations", "-i"},
       description = "Iteration index to extract best individuals"
   )
   public List<Integer> iterations = List.of();
+  @Parameter(
+      names = {"--seeds"},
+      description = "Seeds of the evolutionary runs to extract best individuals from; empty for all the seeds"
+  )
+  public List<Integer> seeds = List.of();
+  @Parameter(
+      names = {"--targetFilter"},
+      description = "Regular expression matching (part of) the targets to extract best individuals of; empty for " +
+          "all the targets"
+  )
+  public String targetFilter = "";
+  @Parameter(
+      names = {"--inputIndex"},
+      description = "Read only the rows of the selected best individuals through an index of the input file, " +
+          "built next to it if missing or stale"
+  )
+  public boolean inputIndex = false;
   @Parameter(
       names = {"--nOfDestinations", "-nd"},
       description = "Number of target genotypes for each best"
@@ -97,86 +109,235 @@ public class Starter implements Runnable {
   public int nOfSteps = 10;
   @Parameter(
       names = {"--task"},
-      description = "Task description"
+      description = "Task description; repeat for evaluating each point on several tasks",
+      splitter = LiteralSplitter.class
+  )
+  public List<String> tasks = List.of("s.task.locomotion(terrain = s.t.flat())");
+  @Parameter(
+      names = {"--cFunction"},
+      description = "Function computing the fitness from the outcome of a task; repeat for computing several ones",
+      splitter = LiteralSplitter.class
   )
-  public String task = "s.task.locomotion(terrain = s.t.flat())";
+  public List<String> cFunctions = List.of(C_FUNCTION);
   @Parameter(
       names = {"--nOfThreads"},
       description = "Number of threads"
   )
   public int nOfThreads = 1;
+  @Parameter(
+      names = {"--executor"},
+      description = "Kind of the pool of threads evaluating the points locally"
+  )
+  public ExecutionBackend.Kind executor = ExecutionBackend.Kind.FIXED;
+  @Parameter(
+      names = {"--batchMillis"},
+      description = "Evaluations of a target expected to take less than this are batched in tasks of about this " +
+          "duration; 0 for not batching"
+  )
+  public int batchMillis = 100;
   @Parameter(
       names = {"--randomSeed"},
       description = "Seed of the random generator"
   )
   public int randomSeed = 1;
+  @Parameter(
+      names = {"--maxInFlight"},
+      description = "Max number of tasks (points, batches of cheap points, or walks, with --lowFidelityTask) being " +
+          "evaluated or waiting to be saved"
+  )
+  public int maxInFlight = 1000;
+  @Parameter(
+      names = {"--orderedOutput"},
+      description = "Save outcomes in the canonical (best, destination, step) order instead of the completion order; " +
+          "without it, the points repeated within the walks of a best are evaluated once (across bests, they are " +
+          "evaluated once only with --fitnessCacheFile)"
+  )
+  public boolean orderedOutput = false;
+  @Parameter(
+      names = {"--planOrder"},
+      description = "Order in which the evaluations are submitted; ignored with --orderedOutput or --lowFidelityTask"
+  )
+  public PlanOrder planOrder = PlanOrder.COST;
+  @Parameter(
+      names = {"--builderCacheSize"},
+      description = "Max number of built mappers, tasks, and cFunctions kept for reuse"
+  )
+  public int builderCacheSize = 100;
+  @Parameter(
+      names = {"--noiseProfile"},
+      description = "Path of the noise profile (saved by NoiseProfiler) telling how many times the points of each " +
+          "target are evaluated on each task; empty for evaluating them once"
+  )
+  public String noiseProfile = "";
+  @Parameter(
+      names = {"--fitnessCacheFile"},
+      description = "Path of the persistent fitness cache; empty for not using it"
+  )
+  public String fitnessCacheFile = "";
+  @Parameter(
+      names = {"--fitnessCacheCapacity"},
+      description = "Number of slots (a power of 2) of the fitness cache, if created"
+  )
+  public int fitnessCacheCapacity = 1 << 22;
+  @Parameter(
+      names = {"--resume"},
+      description = "Resume an interrupted run from its journal, skipping the completed tasks"
+  )
+  public boolean resume = false;
+  @Parameter(
+      names = {"--journalBatchSize"},
+      description = "Number of completed tasks after which the output is flushed and the journal is synced to disk, " +
+          "without the output thread; with it, the journal is synced at each flush of the output"
+  )
+  public int journalBatchSize = 100;
+  @Parameter(
+      names = {"--coordinatorPort"},
+      description = "Port on which remote workers are waited for and given the evaluations; 0 for evaluating locally"
+  )
+  public int coordinatorPort = 0;
+  @Parameter(
+      names = {"--workerTimeout"},
+      description = "Seconds after which a silent remote worker is considered lost and its points are given to others"
+  )
+  public int workerTimeout = 60;
+  @Parameter(
+      names = {"--lowFidelityTask"},
+      description = "Cheap task whose outcome decides which points of a walk are evaluated on --task; empty for " +
+          "evaluating all the points on --task"
+  )
+  public String lowFidelityTask = "";
+  @Parameter(
+      names = {"--promotionRule"},
+      description = "Rule for choosing, within a walk, the points to be evaluated also on --task"
+  )
+  public MultiFidelity.Rule promotionRule = MultiFidelity.Rule.TOP_K;
+  @Parameter(
+      names = {"--promotionK"},
+      description = "Number of points of a walk promoted by the TOP_K rule; it should be smaller than the " +
+          "--nOfSteps+1 points of a walk"
+  )
+  public int promotionK = 3;
+  @Parameter(
+      names = {"--promotionTolerance"},
+      description = "Tolerance, relative to the low-fidelity q of the walk source, of the NEAR_REFERENCE and " +
+          "DISAGREEMENT rules"
+  )
+  public double promotionTolerance = 0.1;
+  @Parameter(
+      names = {"--promotionAbsTolerance"},
+      description = "Min tolerance, in units of q, of the NEAR_REFERENCE and DISAGREEMENT rules, for references " +
+          "close to 0"
+  )
+  public double promotionAbsTolerance = 0.01;
+  @Parameter(
+      names = {"--surrogate"},
+      description = "Predict the q of the points from the simulated ones of the same target, and simulate only " +
+          "the points whose prediction is too uncertain"
+  )
+  public boolean surrogate = false;
+  @Parameter(
+      names = {"--surrogateK"},
+      description = "Number of nearest simulated points used for predicting the q of a point"
+  )
+  public int surrogateK = 8;
+  @Parameter(
+      names = {"--surrogateTolerance"},
+      description = "Max uncertainty of a prediction, and max validation RMSE of the predictions of a target"
+  )
+  public double surrogateTolerance = 0.05;
+  @Parameter(
+      names = {"--surrogateMinPoints"},
+      description = "Number of simulated points of a target before its points are predicted"
+  )
+  public int surrogateMinPoints = 100;
+  @Parameter(
+      names = {"--surrogateValidation"},
+      description = "Fraction of the points which could be predicted that are simulated for validating the predictions"
+  )
+  public double surrogateValidation = 0.05;
+  @Parameter(
+      names = {"--landscapeMetricsFile"},
+      description = "Path of the file where snapshots of landscape metrics computed during the run are saved; " +
+          "empty for not computing them"
+  )
+  public String landscapeMetricsFile = "";
+  @Parameter(
+      names = {"--landscapeMetricsInterval"},
+      description = "Seconds between snapshots of the landscape metrics"
+  )
+  public int landscapeMetricsInterval = 60;
+  @Parameter(
+      names = {"--neutralityTolerance"},
+      description = "Max difference of q, relative to the q of the walk source, between neutral consecutive points"
+  )
+  public double neutralityTolerance = 0.05;
+  @Parameter(
+      names = {"--metricsFile"},
+      description = "Path of the file where periodic summaries of progress and simulation latencies are saved; " +
+          "empty for just logging them"
+  )
+  public String metricsFile = "";
+  @Parameter(
+      names = {"--metricsInterval"},
+      description = "Seconds between summaries of progress and simulation latencies"
+  )
+  public int metricsInterval = 10;
+  @Parameter(
+      names = {"--genotypePrecision"},
+      description = "Precision of the genes in the genotype column of the output"
+  )
+  public GenotypeCodec.Precision genotypePrecision = GenotypeCodec.Precision.FLOAT64;
 
-  private record AnnotatedGenotype(
-      String target,
-      int seed,
-      int iteration,
-      List<Double> sourceGenotype,
-      double q
-  ) {}
+  public enum PlanOrder {
+    INPUT, COST
+  }
+
+  /**
+   * Does not split the values of a parameter, which may contain commas.
+   */
+  public static class LiteralSplitter implements IParameterSplitter {
+    @Override
+    public List<String> split(String value) {
+      return List.of(value);
+    }
+  }
 
   private record Outcome(
-      AnnotatedGenotype annotatedSourceGenotype,
+      int bestIndex,
+      BestReader.Best annotatedSourceGenotype,
       int destinationIndex,
       int stepIndex,
       double d,
-      List<Double> genotype,
-      double q
-  ) {}
-
-  private static List<Double> dPoint(double d, List<Double> src, List<Double> direction) {
-    if (src.size() != direction.size()) {
-      throw new IllegalArgumentException("Vectors should have the same length: got %d and %d".formatted(
-          src.size(),
-          direction.size()
-      ));
+      double[] genotype,
+      double[] qs,
+      double lowFidelityQ,
+      Surrogate.Estimate estimate
+  ) {
+    //the fitness on the first task according to the first cFunction
+    double q() {
+      return qs[0];
     }
-    return IntStream.range(0, src.size())
-        .mapToObj(i -> src.get(i) + direction.get(i) * d)
-        .toList();
   }
 
-  private static double distance(List<Double> p1, List<Double> p2) {
-    if (p1.size() != p2.size()) {
-      throw new IllegalArgumentException("Vectors should have the same length: got %d and %d".formatted(
-          p1.size(),
-          p2.size()
-      ));
-    }
-    double d = 0;
-    for (int i = 0; i < p1.size(); i++) {
-      d = d + (p1.get(i) - p2.get(i)) * (p1.get(i) - p2.get(i));
-    }
-    return Math.sqrt(d);
-  }
+  private record PlannedRow(
+      int bestIndex,
+      BestReader.Best annotatedSourceGenotype,
+      int destinationIndex,
+      int stepIndex,
+      double d
+  ) {}
 
   public static List<Double> deserialize(String s) {
-    try (
-        ByteArrayInputStream bais = new ByteArrayInputStream(Base64.getDecoder().decode(s));
-        ObjectInputStream ois = new ObjectInputStream(bais)
-    ) {
-      //noinspection unchecked
-      return (List<Double>) ois.readObject();
-    } catch (IOException | ClassNotFoundException e) {
+    try {
+      return GenotypeCodec.decode(s);
+    } catch (IllegalArgumentException e) {
       L.severe("Cannot deserialize: %s".formatted(e));
     }
     return null;
   }
 
   public static String serialize(List<Double> values) {
-    try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-         ObjectOutputStream oos = new ObjectOutputStream(baos)
-    ) {
-      oos.writeObject(values);
-      return Base64.getEncoder().encodeToString(baos.toByteArray());
-    } catch (IOException e) {
-      L.severe("Cannot deserialize: %s".formatted(e));
-    }
-    return "";
+    return GenotypeCodec.encodeToString(values, GenotypeCodec.Precision.FLOAT64);
   }
 
   public static void main(String[] args) {
@@ -197,173 +358,590 @@ public class Starter implements Runnable {
     }
   }
 
-  private static List<Double> randomUnitVector(int p, RandomGenerator randomGenerator) {
-    List<Double> v = IntStream.range(0, p).mapToObj(i -> randomGenerator.nextGaussian(0d, 1d)).toList();
-    List<Double> origin = Collections.nCopies(p, 0d);
-    double norm = distance(v, origin);
-    return v.stream().map(c -> c / norm).toList();
+  private static Evaluator evaluator(
+      String task,
+      List<String> cFunctions,
+      CachedBuilder builder,
+      EngineFactory engineFactory,
+      Coordinator coordinator,
+      FitnessCache fitnessCache,
+      NoiseProfile noiseProfile,
+      RunMetrics runMetrics,
+      ObjLongConsumer<String> costRecorder
+  ) {
+    Evaluator.Simulator simulator = coordinator == null ? Evaluator.local(
+        builder,
+        engineFactory,
+        task,
+        cFunctions
+    ) : coordinator.simulator(task);
+    return new Evaluator(runMetrics.timed(simulator), task, cFunctions, fitnessCache, noiseProfile, costRecorder);
+  }
+
+  private static List<Outcome> evaluate(
+      List<Evaluator> evaluators,
+      Surrogate surrogate,
+      ExecutionBackend backend,
+      List<EvaluationPlan.Evaluation<PlannedRow>> evaluations
+  ) {
+    return backend.apply(evaluations, evaluation -> {
+      List<Outcome> outcomes = new ArrayList<>(evaluation.rows().size());
+      double[] genotype = evaluation.genotype().get();
+      //the agent is evaluated on each task, the outcome of each task is given to all the cFunctions
+      double[] qs = new double[0];
+      Surrogate.Estimate estimate = null;
+      if (surrogate != null) {
+        estimate = surrogate.evaluate(evaluation.target(), genotype);
+        qs = new double[]{estimate.q()};
+      } else {
+        for (Evaluator evaluator : evaluators) {
+          double[] taskQs = evaluator.evaluateAll(evaluation.target(), genotype);
+          qs = Arrays.copyOf(qs, qs.length + taskQs.length);
+          System.arraycopy(taskQs, 0, qs, qs.length - taskQs.length, taskQs.length);
+        }
+      }
+      double[] pointQs = qs;
+      Surrogate.Estimate pointEstimate = estimate;
+      evaluation.rows().forEach(r -> outcomes.add(new Outcome(
+          r.bestIndex(),
+          r.annotatedSourceGenotype(),
+          r.destinationIndex(),
+          r.stepIndex(),
+          r.d(),
+          genotype,
+          pointQs,
+          Double.NaN,
+          pointEstimate
+      )));
+      return outcomes;
+    });
+  }
+
+  private static void submit(
+      BoundedScheduler<List<Outcome>> scheduler,
+      List<Evaluator> evaluators,
+      Surrogate surrogate,
+      ExecutionBackend backend,
+      RunMetrics runMetrics,
+      List<EvaluationPlan.Evaluation<PlannedRow>> batch
+  ) {
+    runMetrics.submitted(batch.stream().mapToInt(e -> e.rows().size()).sum());
+    scheduler.submit(() -> evaluate(evaluators, surrogate, backend, batch));
+  }
+
+  /**
+   * Returns the position of the best whose target is the costliest by the current estimates, which the probes and
+   * the evaluations fill in while bests are submitted: targets of unknown cost (as their probe is still running or
+   * failed) go first, and ties are broken by the input order.
+   */
+  private static int costliest(List<Integer> bestIndexes, List<BestReader.Best> bests, ExecutionBackend backend) {
+    int position = 0;
+    double maxCost = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < bestIndexes.size(); i = i + 1) {
+      double cost = backend.estimate(bests.get(bestIndexes.get(i)).target());
+      if (Double.isNaN(cost)) {
+        return i;
+      }
+      if (cost > maxCost) {
+        maxCost = cost;
+        position = i;
+      }
+    }
+    return position;
+  }
+
+  private static String key(int bestIndex, int destinationIndex, int stepIndex) {
+    return "%d/%d/%d".formatted(bestIndex, destinationIndex, stepIndex);
+  }
+
+  //with the ordered output, points are not deduplicated, as the rows of a point have to be saved in their own places
+  private EvaluationPlan<PlannedRow> plan(
+      int bestIndex,
+      BestReader.Best annotatedGenotype,
+      double[][] unitDiffs,
+      Set<String> completedKeys
+  ) {
+    EvaluationPlan<PlannedRow> plan = new EvaluationPlan<>(
+        String.join("\n", tasks),
+        String.join("\n", cFunctions),
+        !orderedOutput
+    );
+    for (int destinationIndex = 0; destinationIndex < nOfDestinations; destinationIndex = destinationIndex + 1) {
+      double[] unitDiff = unitDiffs[destinationIndex];
+      for (int stepIndex = 0; stepIndex <= nOfSteps; stepIndex = stepIndex + 1) {
+        if (completedKeys.contains(key(bestIndex, destinationIndex, stepIndex))) {
+          continue;
+        }
+        double d = destinationDistance * (double) stepIndex / (double) nOfSteps;
+        plan.add(
+            annotatedGenotype.target(),
+            () -> Vectors.dPoint(d, annotatedGenotype.genotype(), unitDiff, new double[unitDiff.length]),
+            new PlannedRow(bestIndex, annotatedGenotype, destinationIndex, stepIndex, d)
+        );
+      }
+    }
+    return plan;
   }
 
   @Override
   public void run() {
-    NamedBuilder<?> nb = PreparedNamedBuilder.get();
+    if (!lowFidelityTask.isEmpty() && (tasks.size() > 1 || cFunctions.size() > 1)) {
+      throw new IllegalArgumentException("Cannot use a low-fidelity task with several tasks or cFunctions");
+    }
+    if (surrogate && (tasks.size() > 1 || cFunctions.size() > 1)) {
+      throw new IllegalArgumentException("Cannot use a surrogate with several tasks or cFunctions");
+    }
+    if (surrogate && !lowFidelityTask.isEmpty()) {
+      throw new IllegalArgumentException("Cannot use both a surrogate and a low-fidelity task");
+    }
+    CachedBuilder builder = new CachedBuilder(PreparedNamedBuilder.get(), builderCacheSize);
     //read file and save bests
-    List<AnnotatedGenotype> annotatedGenotypes;
-    try (Reader reader = new FileReader(inputFile)) {
+    List<BestReader.Best> bests;
+    try {
       L.info("Reading input file %s".formatted(inputFile));
-      CSVParser parser = CSVFormat.Builder.create().setDelimiter(';').setHeader().build().parse(reader);
-      annotatedGenotypes = parser.stream()
-          .map(r -> {
-            String target;
-            if (parser.getHeaderNames().contains("solver.mapper.target")) {
-              target = r.get("solver.mapper.target");
-            } else {
-              target = VSR_TARGET_TEMPLATE
-                  .replace("%SHAPE%", r.get("solver.mapper.target.body.shape"))
-                  .replace("%FUNCTION%", r.get("solver.mapper.target.function"))
-                  .replaceFirst("free\\(s=([^)]*)\\)", "free(s=\"$1\")")
-                  .replaceAll("\\s", "");
-            }
-            return new AnnotatedGenotype(
-                target,
-                Integer.parseInt(r.get("randomGenerator.seed")),
-                Integer.parseInt(r.get("iterations")),
-                deserialize(r.get("best→genotype→base64")),
-                Double.parseDouble(r.get("best→fitness→s.task.l.xVelocity"))
-            );
-          })
-          .toList();
-      L.info("%d target genotypes found for iterations %s".formatted(annotatedGenotypes.size(), iterations));
+      bests = BestReader.read(
+          Path.of(inputFile),
+          new BestReader.Filter(
+              Set.copyOf(iterations),
+              seeds.isEmpty() ? null : Set.copyOf(seeds),
+              targetFilter.isEmpty() ? null : Pattern.compile(targetFilter)
+          ),
+          inputIndex
+      );
+      L.info("%d target genotypes found for iterations %s".formatted(bests.size(), iterations));
     } catch (IOException e) {
       throw new IllegalArgumentException("Cannot open input file %s: %s".formatted(inputFile, e));
     }
     //show info and domains by target
-    annotatedGenotypes.stream()
-        .map(AnnotatedGenotype::target)
-        .distinct()
-        .forEach(t -> {
-          List<Integer> gSizes = annotatedGenotypes.stream()
-              .filter(ag -> ag.target().equals(t))
-              .map(ag -> ag.sourceGenotype().size())
-              .distinct()
-              .toList();
-          List<DoubleRange> genotypeRanges = annotatedGenotypes.stream()
-              .filter(ag -> ag.target().equals(t))
-              .map(ag -> ag.sourceGenotype.stream().map(v -> new DoubleRange(v, v)).toList())
-              .reduce((rs1, rs2) -> IntStream.range(0, rs1.size()).mapToObj(i -> new DoubleRange(
-                  Math.min(rs1.get(i).min(), rs2.get(i).min()),
-                  Math.max(rs1.get(i).max(), rs2.get(i).max())
-              )).toList())
-              .orElseThrow();
-          DoubleRange enclosingRange = genotypeRanges.stream().reduce((r1, r2) -> new DoubleRange(
-              Math.min(r1.min(), r2.min()),
-              Math.max(r1.max(), r2.max())
-          )).orElseThrow();
-          DoubleRange averageRange = genotypeRanges.stream().reduce((r1, r2) -> new DoubleRange(
-              (r1.min() + r2.min()) / 2d,
-              (r1.max() + r2.max()) / 2d
-          )).orElseThrow();
-          System.out.printf(
-              """
-                  Target: %s
-                  Distinct genotype sizes: %s
-                  Enclosing genes range: [%+.3f,%+.3f]
-                  Average genes range: [%+.3f,%+.3f]
-                  """,
-              t,
-              gSizes,
-              enclosingRange.min(), enclosingRange.max(),
-              averageRange.min(), averageRange.max()
-          );
-        });
+    BestReader.domains(bests).forEach((t, domain) -> System.out.printf(
+        """
+            Target: %s
+            Distinct genotype sizes: %s
+            Enclosing genes range: [%+.3f,%+.3f]
+            Average genes range: [%+.3f,%+.3f]
+            """,
+        t,
+        domain.genotypeSizes(),
+        domain.enclosingRange().min(), domain.enclosingRange().max(),
+        domain.averageRange().min(), domain.averageRange().max()
+    ));
     //prepare engine, executor, cFunction, task
-    Supplier<Engine> engineSupplier = () -> ServiceLoader.load(Engine.class)
-        .findFirst()
-        .orElseThrow(() -> new RuntimeException("Cannot instantiate an engine"));
-    ExecutorService executorService = Executors.newFixedThreadPool(nOfThreads);
-    @SuppressWarnings("unchecked") Function<Object, Double> cFunction = (Function<Object, Double>) nb.build(C_FUNCTION);
-    @SuppressWarnings("unchecked") Task<Supplier<EmbodiedAgent>, ?> localTask =
-        (Task<Supplier<EmbodiedAgent>, ?>) nb.build(
-            task);
-    RandomGenerator randomGenerator = new Random(randomSeed);
-    //iterate over bests
-    List<Future<Outcome>> futures = new ArrayList<>();
-    for (AnnotatedGenotype annotatedGenotype : annotatedGenotypes.stream()
-        .filter(ag -> iterations.contains(ag.iteration))
-        .toList()) {
-      for (int destinationIndex = 0; destinationIndex < nOfDestinations; destinationIndex = destinationIndex + 1) {
-        int dI = destinationIndex;
-        List<Double> unitDiff = randomUnitVector(annotatedGenotype.sourceGenotype().size(), randomGenerator);
-        for (int stepIndex = 0; stepIndex <= nOfSteps; stepIndex = stepIndex + 1) {
-          int sI = stepIndex;
-          double d = destinationDistance * (double) stepIndex / (double) nOfSteps;
-          List<Double> genotype = dPoint(d, annotatedGenotype.sourceGenotype(), unitDiff);
-          @SuppressWarnings("unchecked") InvertibleMapper<List<Double>, Supplier<EmbodiedAgent>> mapper =
-              (InvertibleMapper<List<Double>, Supplier<EmbodiedAgent>>) nb.build(
-                  MAPPER_TEMPLATE.replace("%TARGET%", annotatedGenotype.target()));
-          Supplier<EmbodiedAgent> agentSupplier = mapper.apply(genotype);
-          futures.add(executorService.submit(() -> {
-            Object taskOutcome = localTask.run(agentSupplier, engineSupplier.get());
-            return new Outcome(annotatedGenotype, dI, sI, d, genotype, cFunction.apply(taskOutcome));
-          }));
-        }
+    EngineFactory engineFactory = EngineFactory.fromServiceLoader();
+    FitnessCache fitnessCache = null;
+    if (!fitnessCacheFile.isEmpty()) {
+      try {
+        fitnessCache = new FitnessCache(Path.of(fitnessCacheFile), fitnessCacheCapacity);
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Cannot open fitness cache %s: %s".formatted(fitnessCacheFile, e));
       }
     }
-    L.info("%d tasks scheduled".formatted(futures.size()));
-    //save results
-    CSVPrinter printer;
+    NoiseProfile profile = null;
+    if (!noiseProfile.isEmpty()) {
+      try {
+        profile = NoiseProfile.read(Path.of(noiseProfile));
+        L.info("Noise profile: %s".formatted(profile));
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Cannot read noise profile %s: %s".formatted(noiseProfile, e));
+      }
+    }
+    Coordinator coordinator = null;
+    ExecutionBackend backend;
+    if (coordinatorPort > 0) {
+      try {
+        coordinator = new Coordinator(coordinatorPort, cFunctions, workerTimeout * 1000);
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Cannot start coordinator on port %d: %s".formatted(coordinatorPort, e));
+      }
+      //threads just wait for remote results, their number is bounded by maxInFlight
+      backend = new ExecutionBackend("remote", Executors.newCachedThreadPool(), maxInFlight);
+    } else {
+      backend = ExecutionBackend.of(executor, nOfThreads);
+    }
+    RunMetrics runMetrics;
     try {
-      printer = new org.apache.commons.csv.CSVPrinter(
-          new PrintStream(outputFile),
-          CSVFormat.Builder.create().setDelimiter(";").build()
+      runMetrics = new RunMetrics(
+          metricsFile.isEmpty() ? null : Path.of(metricsFile),
+          metricsInterval * 1000L,
+          backend::queueDepth
       );
-      printer.printRecord(List.of(
-          "target",
-          "seed",
-          "iteration",
-          "srcQ",
-          "dstIndex",
-          "stepIndex",
-          "d",
-          "pointQ",
-          "genotype"
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Cannot open metrics file %s: %s".formatted(metricsFile, e));
+    }
+    List<Evaluator> evaluators = new ArrayList<>();
+    for (String task : tasks) {
+      evaluators.add(evaluator(
+          task,
+          cFunctions,
+          builder,
+          engineFactory,
+          coordinator,
+          fitnessCache,
+          profile,
+          runMetrics,
+          //a point is simulated on each task, hence its cost is about the mean one of a simulation times their number
+          (t, nanos) -> backend.record(t, nanos * tasks.size())
       ));
+    }
+    MultiFidelity multiFidelity = null;
+    if (!lowFidelityTask.isEmpty()) {
+      if (promotionRule.equals(MultiFidelity.Rule.TOP_K) && promotionK >= nOfSteps + 1) {
+        L.warning("--promotionK %d promotes all the %d points of each walk, saving no simulation".formatted(
+            promotionK,
+            nOfSteps + 1
+        ));
+      }
+      multiFidelity = new MultiFidelity(
+          evaluator(
+              lowFidelityTask,
+              cFunctions,
+              builder,
+              engineFactory,
+              coordinator,
+              fitnessCache,
+              profile,
+              runMetrics,
+              null
+          ),
+          evaluators.get(0),
+          promotionRule,
+          promotionK,
+          promotionTolerance,
+          promotionAbsTolerance,
+          Double.NaN
+      );
+    }
+    Surrogate surrogateModel = surrogate ? new Surrogate(
+        evaluators.get(0),
+        surrogateK,
+        surrogateTolerance,
+        surrogateMinPoints,
+        surrogateValidation
+    ) : null;
+    RandomGenerator randomGenerator = new Random(randomSeed);
+    int nOfTasks = bests.size() * nOfDestinations * (nOfSteps + 1);
+    //prepare output and journal
+    Path outputPath = Path.of(outputFile);
+    Path journalPath = Path.of(outputFile + ".journal");
+    //the parameters defining the point of each best, destination, and step index, which are the keys of the journal
+    String journalHeader = ("inputFile=%s;iterations=%s;seeds=%s;targetFilter=%s;nOfBests=%d;nOfDestinations=%d;" +
+        "destinationDistance=%s;nOfSteps=%d;randomSeed=%d").formatted(
+        inputFile,
+        iterations,
+        seeds,
+        targetFilter,
+        bests.size(),
+        nOfDestinations,
+        destinationDistance,
+        nOfSteps,
+        randomSeed
+    );
+    RowSink sink;
+    Journal journal;
+    Set<String> completedKeys;
+    try {
+      Journal.State state = resume ? Journal.resume(journalPath, outputPath, journalHeader) : new Journal.State(
+          journalHeader,
+          Set.of(),
+          0,
+          0
+      );
+      completedKeys = state.keys();
+      runMetrics.planned(nOfTasks - completedKeys.size());
+      boolean append = state.outputLength() > 0;
+      List<RowSink.Column> columns = new ArrayList<>(List.of(
+          new RowSink.Column("target", RowSink.Type.DICTIONARY),
+          new RowSink.Column("seed", RowSink.Type.INT),
+          new RowSink.Column("iteration", RowSink.Type.INT),
+          new RowSink.Column("srcQ", RowSink.Type.DOUBLE),
+          new RowSink.Column("dstIndex", RowSink.Type.INT),
+          new RowSink.Column("stepIndex", RowSink.Type.INT),
+          new RowSink.Column("d", RowSink.Type.DOUBLE),
+          new RowSink.Column("pointQ", RowSink.Type.DOUBLE),
+          new RowSink.Column("genotype", RowSink.Type.STRING)
+      ));
+      if (multiFidelity != null) {
+        columns.add(new RowSink.Column("lowFidelityQ", RowSink.Type.DOUBLE));
+      }
+      if (surrogateModel != null) {
+        columns.add(new RowSink.Column("source", RowSink.Type.DICTIONARY));
+        columns.add(new RowSink.Column("predictedQ", RowSink.Type.DOUBLE));
+        columns.add(new RowSink.Column("predictionUncertainty", RowSink.Type.DOUBLE));
+      }
+      //pointQ is for the first task and cFunction, further columns are for the other pairs
+      for (int tI = 0; tI < tasks.size(); tI = tI + 1) {
+        for (int cI = 0; cI < cFunctions.size(); cI = cI + 1) {
+          if (tI > 0 || cI > 0) {
+            columns.add(new RowSink.Column("pointQ.%d.%d".formatted(tI, cI), RowSink.Type.DOUBLE));
+            L.info("Column pointQ.%d.%d is for %s on %s".formatted(tI, cI, cFunctions.get(cI), tasks.get(tI)));
+          }
+        }
+      }
+      sink = RowSink.asynchronous(
+          RowSink.of(outputFormat, outputPath, columns, append),
+          outputQueueSize,
+          outputFlushRows,
+          outputFlushMillis
+      );
+      //with the output thread, the journal is committed at its flushes, not to stall the collection of the results
+      journal = new Journal(
+          journalPath,
+          journalHeader,
+          sink instanceof AsyncRowSink ? 0 : journalBatchSize,
+          sink,
+          append
+      );
     } catch (IOException e) {
       L.severe("Cannot open output file: %s".formatted(e));
-      executorService.shutdownNow();
+      backend.executor().shutdownNow();
       return;
     }
+    LandscapeMetrics landscapeMetrics = null;
+    if (!landscapeMetricsFile.isEmpty()) {
+      try {
+        landscapeMetrics = new LandscapeMetrics(
+            nOfSteps,
+            neutralityTolerance,
+            Path.of(landscapeMetricsFile),
+            landscapeMetricsInterval * 1000L
+        );
+      } catch (IOException e) {
+        L.severe("Cannot open landscape metrics file: %s".formatted(e));
+      }
+    }
+    if (landscapeMetrics != null && !completedKeys.isEmpty()) {
+      //points of partially done walks are already in the output and will not come again
+      for (int bI = 0; bI < bests.size(); bI = bI + 1) {
+        for (int dI = 0; dI < nOfDestinations; dI = dI + 1) {
+          int bestIndex = bI;
+          int destinationIndex = dI;
+          int[] doneStepIndexes = IntStream.rangeClosed(0, nOfSteps)
+              .filter(sI -> completedKeys.contains(key(bestIndex, destinationIndex, sI)))
+              .toArray();
+          if (doneStepIndexes.length <= nOfSteps) {
+            for (int sI : doneStepIndexes) {
+              landscapeMetrics.skip("%d/%d".formatted(bI, dI), sI);
+            }
+          }
+        }
+      }
+    }
+    LandscapeMetrics metrics = landscapeMetrics;
     AtomicInteger counter = new AtomicInteger(0);
-    futures.forEach(f -> {
+    boolean multiFidelityOutput = multiFidelity != null;
+    BoundedScheduler<List<Outcome>> scheduler = new BoundedScheduler<>(
+        backend.executor(),
+        maxInFlight,
+        orderedOutput,
+        outcomes -> outcomes.forEach(outcome -> {
+          runMetrics.completed(1);
+          L.fine("Outcome %d/%d for iteration %d, target %d, point %d found: %6.3f vs. %6.3f ".formatted(
+              counter.incrementAndGet(),
+              nOfTasks - completedKeys.size(),
+              outcome.annotatedSourceGenotype().iteration(),
+              outcome.destinationIndex(),
+              outcome.stepIndex(),
+              outcome.q(),
+              outcome.annotatedSourceGenotype().q()
+          ));
+          List<Object> values = new ArrayList<>(List.of(
+              outcome.annotatedSourceGenotype().target(),
+              outcome.annotatedSourceGenotype().seed(),
+              outcome.annotatedSourceGenotype().iteration(),
+              outcome.annotatedSourceGenotype().q(),
+              outcome.destinationIndex(),
+              outcome.stepIndex(),
+              outcome.d(),
+              outcome.q(),
+              GenotypeCodec.encodeToString(outcome.genotype(), genotypePrecision)
+          ));
+          if (multiFidelityOutput) {
+            values.add(outcome.lowFidelityQ());
+          }
+          if (outcome.estimate() != null) {
+            values.add(outcome.estimate().source().name());
+            values.add(outcome.estimate().predictedQ());
+            values.add(outcome.estimate().uncertainty());
+          }
+          for (int i = 1; i < outcome.qs().length; i = i + 1) {
+            values.add(outcome.qs()[i]);
+          }
+          try {
+            journal.record(key(outcome.bestIndex(), outcome.destinationIndex(), outcome.stepIndex()), values);
+          } catch (IOException e) {
+            L.severe("Cannot print result due to: %s".formatted(e));
+          }
+          if (metrics != null) {
+            try {
+              metrics.add(
+                  outcome.annotatedSourceGenotype().target(),
+                  "%d/%d".formatted(outcome.bestIndex(), outcome.destinationIndex()),
+                  outcome.stepIndex(),
+                  outcome.d(),
+                  outcome.q()
+              );
+            } catch (IOException e) {
+              L.severe("Cannot save landscape metrics: %s".formatted(e));
+            }
+          }
+        })
+    );
+    //draw the walk directions in the (best, destination) order, so that points do not depend on the submission order
+    double[][][] unitDiffs = new double[bests.size()][nOfDestinations][];
+    for (int bI = 0; bI < bests.size(); bI = bI + 1) {
+      for (int dI = 0; dI < nOfDestinations; dI = dI + 1) {
+        unitDiffs[bI][dI] = Vectors.randomUnitVector(randomGenerator, new double[bests.get(bI).genotype().length]);
+      }
+    }
+    L.info("%d tasks to be scheduled with at most %d in flight".formatted(nOfTasks, maxInFlight));
+    List<Integer> bestIndexes = IntStream.range(0, bests.size()).boxed().toList();
+    Map<Integer, EvaluationPlan<PlannedRow>> probedPlans = new HashMap<>();
+    if (multiFidelity == null && !orderedOutput && planOrder.equals(PlanOrder.COST)) {
+      //probe the cost of each target with the first evaluation of its first best, without waiting for the outcomes
+      Map<String, Integer> firstBestIndexes = new LinkedHashMap<>();
+      bestIndexes.forEach(bI -> firstBestIndexes.putIfAbsent(bests.get(bI).target(), bI));
+      for (int bI : firstBestIndexes.values()) {
+        EvaluationPlan<PlannedRow> plan = plan(bI, bests.get(bI), unitDiffs[bI], completedKeys);
+        if (plan.nOfEvaluations() > 0) {
+          submit(scheduler, evaluators, surrogateModel, backend, runMetrics, List.of(plan.evaluations().get(0)));
+          probedPlans.put(bI, plan);
+        }
+      }
+    }
+    //iterate over bests, scheduling walks or compiling and submitting the plan of the points of each best
+    boolean byCost = !probedPlans.isEmpty();
+    List<Integer> remainingBestIndexes = new ArrayList<>(bestIndexes);
+    int nOfPlannedRows = 0;
+    int nOfPlannedEvaluations = 0;
+    List<EvaluationPlan.Evaluation<PlannedRow>> batch = new ArrayList<>();
+    while (!remainingBestIndexes.isEmpty()) {
+      int bI = remainingBestIndexes.remove(byCost ? costliest(remainingBestIndexes, bests, backend) : 0);
+      BestReader.Best annotatedGenotype = bests.get(bI);
+      if (multiFidelity != null) {
+        for (int destinationIndex = 0; destinationIndex < nOfDestinations; destinationIndex = destinationIndex + 1) {
+          int dI = destinationIndex;
+          double[] unitDiff = unitDiffs[bI][dI];
+          //the whole walk is needed for promoting its points: only the missing ones are then saved
+          if (IntStream.rangeClosed(0, nOfSteps).allMatch(sI -> completedKeys.contains(key(bI, dI, sI)))) {
+            continue;
+          }
+          List<double[]> genotypes = new ArrayList<>(nOfSteps + 1);
+          for (int stepIndex = 0; stepIndex <= nOfSteps; stepIndex = stepIndex + 1) {
+            double d = destinationDistance * (double) stepIndex / (double) nOfSteps;
+            genotypes.add(Vectors.dPoint(d, annotatedGenotype.genotype(), unitDiff, new double[unitDiff.length]));
+          }
+          MultiFidelity mf = multiFidelity;
+          runMetrics.submitted((int) IntStream.rangeClosed(0, nOfSteps)
+              .filter(sI -> !completedKeys.contains(key(bI, dI, sI)))
+              .count());
+          scheduler.submit(() -> {
+            long startingT = System.nanoTime();
+            MultiFidelity.Evaluation[] evaluations = mf.evaluate(annotatedGenotype.target(), genotypes);
+            backend.busy(System.nanoTime() - startingT);
+            List<Outcome> outcomes = new ArrayList<>();
+            for (int sI = 0; sI <= nOfSteps; sI = sI + 1) {
+              if (!completedKeys.contains(key(bI, dI, sI))) {
+                outcomes.add(new Outcome(
+                    bI,
+                    annotatedGenotype,
+                    dI,
+                    sI,
+                    destinationDistance * (double) sI / (double) nOfSteps,
+                    genotypes.get(sI),
+                    new double[]{evaluations[sI].q()},
+                    evaluations[sI].lowFidelityQ(),
+                    null
+                ));
+              }
+            }
+            return outcomes;
+          });
+        }
+        continue;
+      }
+      //only the plan of the current best is in memory, besides the ones of the probed bests
+      EvaluationPlan<PlannedRow> plan = probedPlans.remove(bI);
+      List<EvaluationPlan.Evaluation<PlannedRow>> evaluations;
+      if (plan == null) {
+        plan = plan(bI, annotatedGenotype, unitDiffs[bI], completedKeys);
+        evaluations = plan.evaluations();
+      } else {
+        evaluations = plan.evaluations().subList(1, plan.nOfEvaluations());
+      }
+      nOfPlannedRows = nOfPlannedRows + plan.nOfRows();
+      nOfPlannedEvaluations = nOfPlannedEvaluations + plan.nOfEvaluations();
+      //batch consecutive evaluations of the same target as long as they are expected to be cheap
+      for (EvaluationPlan.Evaluation<PlannedRow> evaluation : evaluations) {
+        if (!batch.isEmpty() && !batch.get(0).target().equals(evaluation.target())) {
+          submit(scheduler, evaluators, surrogateModel, backend, runMetrics, batch);
+          batch = new ArrayList<>();
+        }
+        batch.add(evaluation);
+        if (batch.size() >= backend.batchSize(evaluation.target(), batchMillis / 1000d)) {
+          submit(scheduler, evaluators, surrogateModel, backend, runMetrics, batch);
+          batch = new ArrayList<>();
+        }
+      }
+    }
+    if (!batch.isEmpty()) {
+      submit(scheduler, evaluators, surrogateModel, backend, runMetrics, batch);
+    }
+    if (nOfPlannedRows > 0) {
+      L.info("Plan: %d rows in %d evaluations (%d duplicates collapsed)".formatted(
+          nOfPlannedRows,
+          nOfPlannedEvaluations,
+          nOfPlannedRows - nOfPlannedEvaluations
+      ));
+    }
+    scheduler.drain();
+    if (scheduler.nOfFailed() > 0) {
+      L.warning("%d of %d tasks failed".formatted(scheduler.nOfFailed(), scheduler.nOfSubmitted()));
+    }
+    try {
+      sink.close();
+      journal.close();
+    } catch (IOException e) {
+      L.severe("Cannot close output file: %s".formatted(e));
+    }
+    try {
+      runMetrics.close();
+    } catch (IOException e) {
+      L.severe("Cannot close metrics file: %s".formatted(e));
+    }
+    if (landscapeMetrics != null) {
       try {
-        Outcome outcome = f.get();
-        L.info("Outcome %d/%d for iteration %d, target %d, point %d found: %6.3f vs. %6.3f ".formatted(
-            counter.incrementAndGet(),
-            futures.size(),
-            outcome.annotatedSourceGenotype().iteration(),
-            outcome.destinationIndex(),
-            outcome.stepIndex(),
-            outcome.q(),
-            outcome.annotatedSourceGenotype().q()
-        ));
-        printer.printRecord(List.of(
-            outcome.annotatedSourceGenotype().target(),
-            outcome.annotatedSourceGenotype().seed(),
-            outcome.annotatedSourceGenotype().iteration(),
-            outcome.annotatedSourceGenotype().q(),
-            outcome.destinationIndex(),
-            outcome.stepIndex(),
-            outcome.d(),
-            outcome.q(),
-            serialize(outcome.genotype())
-        ));
-      } catch (InterruptedException | ExecutionException e) {
-        L.severe("Cannot get result due to: %s".formatted(e));
+        landscapeMetrics.close();
       } catch (IOException e) {
-        L.severe("Cannot print result due to: %s".formatted(e));
+        L.severe("Cannot close landscape metrics file: %s".formatted(e));
       }
-    });
-    executorService.shutdown();
+    }
+    if (multiFidelity != null) {
+      L.info("Multi-fidelity: %s".formatted(multiFidelity));
+    }
+    if (surrogateModel != null) {
+      L.info("Surrogate: %s".formatted(surrogateModel));
+    }
+    L.info("Execution: %s".formatted(backend));
+    if (sink instanceof AsyncRowSink) {
+      L.info("Output: %s".formatted(sink));
+    }
+    L.info("Builder cache: %s".formatted(builder));
+    L.info("Engine factory: %s".formatted(engineFactory));
+    if (coordinator != null) {
+      L.info("Coordinator: %s".formatted(coordinator));
+      try {
+        coordinator.close();
+      } catch (IOException e) {
+        L.severe("Cannot close coordinator: %s".formatted(e));
+      }
+    }
+    if (fitnessCache != null) {
+      try {
+        fitnessCache.close();
+      } catch (IOException e) {
+        L.severe("Cannot close fitness cache: %s".formatted(e));
+      }
+    }
+    backend.shutdown();
   }
 
 }
@@ -0,0 +1,263 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+/**
+ * Predicts the fitness of points from the ones of the simulated points of the same target, and simulates (with an
+ * {@link Evaluator}) only the points whose prediction is too uncertain. The prediction is the inverse squared distance
+ * weighted mean of the fitness of the {@code k} nearest simulated points; its uncertainty is the weighted standard
+ * deviation of their fitness plus the distance to the nearest one times the largest slope between the nearest one and
+ * the others, hence it is large where the landscape is rugged or little known. A point is predicted only if the target
+ * has at least {@code minPoints} simulated points and the uncertainty is at most {@code tolerance}; a fraction
+ * {@code validationRate} of the points which could be predicted (chosen by hashing the genotype) is simulated anyway,
+ * for validation: if the root mean squared error of the validated predictions of a target exceeds the tolerance, its
+ * points are no longer predicted.
+ */
+public class Surrogate {
+
+  private final static Logger L = Logger.getLogger(Surrogate.class.getName());
+  private final static int MIN_VALIDATIONS = 10;
+
+  private final Evaluator evaluator;
+  private final int k;
+  private final double tolerance;
+  private final int minPoints;
+  private final double validationRate;
+  private final Map<String, Model> models;
+  private final AtomicLong nOfSimulated;
+  private final AtomicLong nOfPredicted;
+  private final AtomicLong nOfValidated;
+
+  public Surrogate(Evaluator evaluator, int k, double tolerance, int minPoints, double validationRate) {
+    if (k < 1) {
+      throw new IllegalArgumentException("Number of neighbors should be at least 1: got %d".formatted(k));
+    }
+    this.evaluator = evaluator;
+    this.k = k;
+    this.tolerance = tolerance;
+    this.minPoints = Math.max(k, minPoints);
+    this.validationRate = validationRate;
+    models = new ConcurrentHashMap<>();
+    nOfSimulated = new AtomicLong();
+    nOfPredicted = new AtomicLong();
+    nOfValidated = new AtomicLong();
+  }
+
+  public enum Source {
+    SIMULATED, PREDICTED, VALIDATION
+  }
+
+  /**
+   * The fitness of a point, with its source, and the prediction with its uncertainty, which are {@code NaN} if the
+   * point could not be predicted.
+   */
+  public record Estimate(double q, Source source, double predictedQ, double uncertainty) {}
+
+  private record Prediction(double q, double uncertainty) {}
+
+  private static class Model {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private double[] xs = new double[0];
+    private double[] qs = new double[0];
+    private int n;
+    private int p = -1;
+    private long nOfValidations;
+    private double sumOfSquaredErrors;
+    private long nOfCovered;
+    private boolean suspended;
+
+    void add(double[] genotype, double q) {
+      lock.writeLock().lock();
+      try {
+        if (p < 0) {
+          p = genotype.length;
+        }
+        if (n == qs.length) {
+          qs = Arrays.copyOf(qs, Math.max(16, qs.length * 2));
+          xs = Arrays.copyOf(xs, qs.length * p);
+        }
+        System.arraycopy(genotype, 0, xs, n * p, p);
+        qs[n] = q;
+        n = n + 1;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    Prediction predict(double[] genotype, int k) {
+      lock.readLock().lock();
+      try {
+        int[] nearest = new int[k];
+        double[] squaredDistances = new double[k];
+        Arrays.fill(squaredDistances, Double.POSITIVE_INFINITY);
+        for (int i = 0; i < n; i = i + 1) {
+          double d = squaredDistance(genotype, xs, i * p, p, squaredDistances[k - 1]);
+          if (d < squaredDistances[k - 1]) {
+            //insertion in the sorted arrays of the nearest points
+            int j = k - 1;
+            while (j > 0 && squaredDistances[j - 1] > d) {
+              squaredDistances[j] = squaredDistances[j - 1];
+              nearest[j] = nearest[j - 1];
+              j = j - 1;
+            }
+            squaredDistances[j] = d;
+            nearest[j] = i;
+          }
+        }
+        double sumOfWeights = 0;
+        double sum = 0;
+        double[] weights = new double[k];
+        for (int j = 0; j < k; j = j + 1) {
+          weights[j] = 1d / (squaredDistances[j] + 1e-12);
+          sumOfWeights = sumOfWeights + weights[j];
+          sum = sum + weights[j] * qs[nearest[j]];
+        }
+        double q = sum / sumOfWeights;
+        double sumOfSquares = 0;
+        double slope = 0;
+        for (int j = 0; j < k; j = j + 1) {
+          sumOfSquares = sumOfSquares + weights[j] * (qs[nearest[j]] - q) * (qs[nearest[j]] - q);
+          if (j > 0) {
+            double d = Math.sqrt(squaredDistance(xs, nearest[0] * p, xs, nearest[j] * p, p));
+            if (d > 0) {
+              slope = Math.max(slope, Math.abs(qs[nearest[j]] - qs[nearest[0]]) / d);
+            }
+          }
+        }
+        return new Prediction(q, Math.sqrt(sumOfSquares / sumOfWeights) + slope * Math.sqrt(squaredDistances[0]));
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    //returns true if this validation suspends the predictions
+    synchronized boolean validate(double error, double uncertainty, double tolerance) {
+      nOfValidations = nOfValidations + 1;
+      sumOfSquaredErrors = sumOfSquaredErrors + error * error;
+      if (Math.abs(error) <= uncertainty) {
+        nOfCovered = nOfCovered + 1;
+      }
+      if (!suspended && nOfValidations >= MIN_VALIDATIONS && rmse() > tolerance) {
+        suspended = true;
+        return true;
+      }
+      return false;
+    }
+
+    synchronized double rmse() {
+      return Math.sqrt(sumOfSquaredErrors / nOfValidations);
+    }
+
+    int size() {
+      lock.readLock().lock();
+      try {
+        return n;
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    synchronized boolean suspended() {
+      return suspended;
+    }
+  }
+
+  private static double squaredDistance(double[] v, double[] xs, int offset, int p, double bound) {
+    double d = 0;
+    for (int i = 0; i < p; i = i + 1) {
+      double diff = v[i] - xs[offset + i];
+      d = d + diff * diff;
+      if (d >= bound) {
+        //cannot be among the nearest
+        return d;
+      }
+    }
+    return d;
+  }
+
+  private static double squaredDistance(double[] xs1, int offset1, double[] xs2, int offset2, int p) {
+    double d = 0;
+    for (int i = 0; i < p; i = i + 1) {
+      double diff = xs1[offset1 + i] - xs2[offset2 + i];
+      d = d + diff * diff;
+    }
+    return d;
+  }
+
+  //the finalizer of SplitMix64, applied to the bits of the genotype
+  private static double hash(double[] genotype) {
+    long h = 0;
+    for (double v : genotype) {
+      h = h * 31 + Double.doubleToLongBits(v);
+    }
+    h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+    h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+    h = h ^ (h >>> 31);
+    return (h >>> 11) * 0x1p-53;
+  }
+
+  public Estimate evaluate(String target, double[] genotype) {
+    Model model = models.computeIfAbsent(target, t -> new Model());
+    Prediction prediction = null;
+    if (!model.suspended() && model.size() >= minPoints) {
+      prediction = model.predict(genotype, k);
+    }
+    boolean predictable = prediction != null && prediction.uncertainty() <= tolerance;
+    if (predictable && hash(genotype) >= validationRate) {
+      nOfPredicted.incrementAndGet();
+      return new Estimate(prediction.q(), Source.PREDICTED, prediction.q(), prediction.uncertainty());
+    }
+    double q = evaluator.evaluate(target, genotype);
+    model.add(genotype, q);
+    if (predictable) {
+      nOfValidated.incrementAndGet();
+      if (model.validate(q - prediction.q(), prediction.uncertainty(), tolerance)) {
+        L.warning("Predictions for target %s suspended: validation RMSE %.4f above tolerance %.4f".formatted(
+            target,
+            model.rmse(),
+            tolerance
+        ));
+      }
+      return new Estimate(q, Source.VALIDATION, prediction.q(), prediction.uncertainty());
+    }
+    nOfSimulated.incrementAndGet();
+    return new Estimate(
+        q,
+        Source.SIMULATED,
+        prediction == null ? Double.NaN : prediction.q(),
+        prediction == null ? Double.NaN : prediction.uncertainty()
+    );
+  }
+
+  @Override
+  public String toString() {
+    long nOfPoints = nOfSimulated.get() + nOfPredicted.get() + nOfValidated.get();
+    StringBuilder sb = new StringBuilder("%d points: %d simulated, %d predicted (%.1f%%), %d validated".formatted(
+        nOfPoints,
+        nOfSimulated.get(),
+        nOfPredicted.get(),
+        100d * nOfPredicted.get() / Math.max(1, nOfPoints),
+        nOfValidated.get()
+    ));
+    models.forEach((t, m) -> {
+      synchronized (m) {
+        if (m.nOfValidations > 0) {
+          sb.append("; validation on %d points of %s: RMSE %.4f, %.0f%% within uncertainty%s".formatted(
+              m.nOfValidations,
+              t.replaceAll("\\s+", ""),
+              m.rmse(),
+              100d * m.nOfCovered / m.nOfValidations,
+              m.suspended ? ", suspended" : ""
+          ));
+        }
+      }
+    });
+    return sb.toString();
+  }
+}
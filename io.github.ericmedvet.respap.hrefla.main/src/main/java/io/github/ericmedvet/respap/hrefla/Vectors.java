@@ -0,0 +1,92 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.random.RandomGenerator;
+
+/**
+ * Operations on genotypes represented as {@code double[]}. Methods taking an {@code out} array write the result there
+ * and do not allocate.
+ */
+public class Vectors {
+
+  private Vectors() {
+  }
+
+  private static class DoubleArrayList extends AbstractList<Double> implements RandomAccess {
+    private final double[] values;
+
+    private DoubleArrayList(double[] values) {
+      this.values = values;
+    }
+
+    @Override
+    public Double get(int index) {
+      return values[index];
+    }
+
+    @Override
+    public int size() {
+      return values.length;
+    }
+  }
+
+  public static List<Double> asList(double[] v) {
+    return new DoubleArrayList(v);
+  }
+
+  private static void checkLengths(double[] v1, double[] v2) {
+    if (v1.length != v2.length) {
+      throw new IllegalArgumentException("Vectors should have the same length: got %d and %d".formatted(
+          v1.length,
+          v2.length
+      ));
+    }
+  }
+
+  public static double[] dPoint(double d, double[] src, double[] direction, double[] out) {
+    checkLengths(src, direction);
+    checkLengths(src, out);
+    for (int i = 0; i < src.length; i = i + 1) {
+      out[i] = src[i] + direction[i] * d;
+    }
+    return out;
+  }
+
+  public static double distance(double[] v1, double[] v2) {
+    checkLengths(v1, v2);
+    double d = 0;
+    for (int i = 0; i < v1.length; i = i + 1) {
+      d = d + (v1[i] - v2[i]) * (v1[i] - v2[i]);
+    }
+    return Math.sqrt(d);
+  }
+
+  public static double norm(double[] v) {
+    double n = 0;
+    for (double c : v) {
+      n = n + c * c;
+    }
+    return Math.sqrt(n);
+  }
+
+  public static double[] randomUnitVector(RandomGenerator randomGenerator, double[] out) {
+    for (int i = 0; i < out.length; i = i + 1) {
+      out[i] = randomGenerator.nextGaussian(0d, 1d);
+    }
+    double norm = norm(out);
+    for (int i = 0; i < out.length; i = i + 1) {
+      out[i] = out[i] / norm;
+    }
+    return out;
+  }
+
+  public static double[] toArray(List<Double> v) {
+    double[] out = new double[v.size()];
+    for (int i = 0; i < out.length; i = i + 1) {
+      out[i] = v.get(i);
+    }
+    return out;
+  }
+}
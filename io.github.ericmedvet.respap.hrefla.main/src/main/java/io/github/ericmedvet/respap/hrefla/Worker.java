@@ -0,0 +1,167 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import io.github.ericmedvet.robotevo2d.main.PreparedNamedBuilder;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * Connects to a {@link Coordinator} and does the simulations of the leases it gets, in parallel, until the
+ * coordinator tells it to stop or closes the connection. The result of each simulation is sent as soon as it is done,
+ * and heartbeats are sent while simulations are running, so that the coordinator can tell a slow worker from a lost
+ * one.
+ */
+public class Worker implements Runnable {
+
+  private final static Logger L = Logger.getLogger(Worker.class.getName());
+
+  @Parameter(
+      names = {"--host"},
+      description = "Host of the coordinator"
+  )
+  public String host = "localhost";
+  @Parameter(
+      names = {"--port"},
+      description = "Port of the coordinator"
+  )
+  public int port = 7000;
+  @Parameter(
+      names = {"--nOfThreads"},
+      description = "Number of threads"
+  )
+  public int nOfThreads = 1;
+  @Parameter(
+      names = {"--leaseSize"},
+      description = "Max number of points asked to the coordinator at once"
+  )
+  public int leaseSize = 10;
+  @Parameter(
+      names = {"--builderCacheSize"},
+      description = "Max number of built mappers, tasks, and cFunctions kept for reuse"
+  )
+  public int builderCacheSize = 100;
+
+  /**
+   * Builds the simulator of a task, for the cFunctions got from the coordinator.
+   */
+  @FunctionalInterface
+  interface SimulatorFactory {
+    Evaluator.Simulator build(String task, List<String> cFunctions);
+  }
+
+  public static void main(String[] args) {
+    try {
+      Worker worker = new Worker();
+      JCommander.newBuilder()
+          .addObject(worker)
+          .build()
+          .parse(args);
+      worker.run();
+    } catch (ParameterException e) {
+      e.usage();
+      L.severe(String.format("Cannot read command line options: %s", e));
+      System.exit(-1);
+    } catch (RuntimeException e) {
+      L.severe(e.getClass().getSimpleName() + ": " + e.getMessage());
+      System.exit(-1);
+    }
+  }
+
+  @Override
+  public void run() {
+    CachedBuilder builder = new CachedBuilder(PreparedNamedBuilder.get(), builderCacheSize);
+    EngineFactory engineFactory = EngineFactory.fromServiceLoader();
+    run((task, cFunctions) -> Evaluator.local(builder, engineFactory, task, cFunctions));
+    L.info("Engine factory: %s".formatted(engineFactory));
+  }
+
+  void run(SimulatorFactory simulatorFactory) {
+    ExecutorService executorService = Executors.newFixedThreadPool(nOfThreads);
+    long nOfPoints = 0;
+    try (Socket socket = new Socket(host, port)) {
+      socket.setTcpNoDelay(true);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      if (in.readInt() != Coordinator.MAGIC || in.readInt() != Coordinator.VERSION) {
+        throw new IOException("Unexpected coordinator protocol");
+      }
+      List<String> cFunctions = new ArrayList<>();
+      int nOfCFunctions = in.readInt();
+      for (int i = 0; i < nOfCFunctions; i = i + 1) {
+        cFunctions.add(Coordinator.readString(in));
+      }
+      int heartbeatMillis = Coordinator.heartbeatMillis(in.readInt());
+      L.info("Connected to %s:%d".formatted(host, port));
+      Map<String, Evaluator.Simulator> simulators = new HashMap<>();
+      Map<Integer, String> strings = new HashMap<>();
+      while (true) {
+        out.writeInt(leaseSize);
+        out.flush();
+        int k = in.readInt();
+        if (k == 0) {
+          break;
+        }
+        CompletionService<double[]> completionService = new ExecutorCompletionService<>(executorService);
+        Map<Future<double[]>, Long> ids = new HashMap<>();
+        for (int i = 0; i < k; i = i + 1) {
+          long id = in.readLong();
+          String target = Coordinator.readString(in, strings);
+          Evaluator.Simulator simulator = simulators.computeIfAbsent(
+              Coordinator.readString(in, strings),
+              task -> simulatorFactory.build(task, cFunctions)
+          );
+          double[] genotype = new double[in.readInt()];
+          for (int j = 0; j < genotype.length; j = j + 1) {
+            genotype[j] = in.readDouble();
+          }
+          ids.put(completionService.submit(() -> simulator.simulate(target, genotype)), id);
+        }
+        int nOfResults = 0;
+        while (nOfResults < k) {
+          Future<double[]> future = completionService.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+          if (future == null) {
+            out.writeByte(Coordinator.HEARTBEAT);
+            out.flush();
+            continue;
+          }
+          nOfResults = nOfResults + 1;
+          long id = ids.get(future);
+          out.writeByte(Coordinator.RESULT);
+          out.writeLong(id);
+          try {
+            double[] qs = future.get();
+            out.writeBoolean(true);
+            out.writeInt(qs.length);
+            for (double q : qs) {
+              out.writeDouble(q);
+            }
+          } catch (ExecutionException e) {
+            L.warning("Cannot simulate point %d: %s".formatted(id, e.getCause()));
+            out.writeBoolean(false);
+            Coordinator.writeString(out, e.getCause().toString());
+          }
+          out.flush();
+        }
+        nOfPoints = nOfPoints + k;
+      }
+      L.info("Done after %d points".formatted(nOfPoints));
+    } catch (EOFException e) {
+      L.info("Coordinator closed the connection after %d points".formatted(nOfPoints));
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Cannot work for %s:%d: %s".formatted(host, port, e));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+}
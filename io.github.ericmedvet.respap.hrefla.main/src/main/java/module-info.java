@@ -1,6 +1,7 @@
 module io.github.ericmedvet.respap.hrefla.main {
   requires jcommander;
   requires java.logging;
+  requires jdk.jfr;
   requires commons.csv;
   requires io.github.ericmedvet.jnb.core;
   requires io.github.ericmedvet.robotevo2d.main;
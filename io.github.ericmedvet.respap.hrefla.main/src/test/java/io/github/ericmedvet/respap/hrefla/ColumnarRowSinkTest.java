@@ -0,0 +1,116 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarRowSinkTest {
+
+  private final static List<RowSink.Column> COLUMNS = List.of(
+      new RowSink.Column("i", RowSink.Type.INT),
+      new RowSink.Column("q", RowSink.Type.DOUBLE),
+      new RowSink.Column("genotype", RowSink.Type.STRING),
+      new RowSink.Column("target", RowSink.Type.DICTIONARY)
+  );
+  //more than one chunk
+  private final static int N_OF_ROWS = 5000;
+
+  @TempDir
+  Path dir;
+
+  private static List<Object> row(int i) {
+    return List.of(i, i / 10d, "g".repeat(i % 7) + i, "t" + (i % 3));
+  }
+
+  private static void write(Path path, int from, int to, boolean append) throws IOException {
+    try (RowSink sink = new ColumnarRowSink(path, COLUMNS, append)) {
+      for (int i = from; i < to; i = i + 1) {
+        sink.write(row(i));
+      }
+    }
+  }
+
+  private static List<List<Object>> read(ColumnarReader reader) throws IOException {
+    List<List<Object>> rows = new ArrayList<>();
+    List<String> names = COLUMNS.stream().map(RowSink.Column::name).toList();
+    for (int c = 0; c < reader.nOfChunks(); c = c + 1) {
+      ColumnarReader.Chunk chunk = reader.chunk(c, names);
+      //backwards, so that strings are not read in order
+      List<List<Object>> chunkRows = new ArrayList<>();
+      for (int r = chunk.nOfRows() - 1; r >= 0; r = r - 1) {
+        List<Object> row = new ArrayList<>();
+        for (String name : names) {
+          row.add(chunk.get(name, r));
+        }
+        chunkRows.add(0, row);
+      }
+      assertEquals(chunk.getStrings("genotype"), chunkRows.stream().map(row -> row.get(2)).toList());
+      rows.addAll(chunkRows);
+    }
+    return rows;
+  }
+
+  private static List<List<Object>> rows(int from, int to) {
+    List<List<Object>> rows = new ArrayList<>();
+    for (int i = from; i < to; i = i + 1) {
+      rows.add(row(i));
+    }
+    return rows;
+  }
+
+  @Test
+  void rowsAreReadBack() throws IOException {
+    Path path = dir.resolve("o");
+    write(path, 0, N_OF_ROWS, false);
+    try (ColumnarReader reader = new ColumnarReader(path)) {
+      assertEquals(COLUMNS, reader.columns());
+      assertEquals(N_OF_ROWS, reader.nOfRows());
+      assertEquals(List.of("t0", "t1", "t2"), reader.dictionary("target"));
+      assertEquals(rows(0, N_OF_ROWS), read(reader));
+    }
+  }
+
+  @Test
+  void rowsAreReadBackWithoutFooter() throws IOException {
+    Path path = dir.resolve("o");
+    write(path, 0, N_OF_ROWS, false);
+    long dataEnd;
+    try (ColumnarReader reader = new ColumnarReader(path)) {
+      dataEnd = reader.dataEnd();
+    }
+    //as after a crash, with a torn chunk
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.truncate(dataEnd);
+    }
+    ByteBuffer tornChunk = ByteBuffer.allocate(3 * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    tornChunk.putInt(ColumnarRowSink.CHUNK_MARKER).putInt(10).putInt(1000);
+    Files.write(path, tornChunk.array(), StandardOpenOption.APPEND);
+    try (ColumnarReader reader = new ColumnarReader(path)) {
+      assertEquals(N_OF_ROWS, reader.nOfRows());
+      assertEquals(rows(0, N_OF_ROWS), read(reader));
+    }
+  }
+
+  @Test
+  void rowsAreAppended() throws IOException {
+    Path path = dir.resolve("o");
+    write(path, 0, N_OF_ROWS, false);
+    write(path, N_OF_ROWS, 2 * N_OF_ROWS, true);
+    try (ColumnarReader reader = new ColumnarReader(path)) {
+      assertEquals(2 * N_OF_ROWS, reader.nOfRows());
+      assertEquals(List.of("t0", "t1", "t2"), reader.dictionary("target"));
+      assertEquals(rows(0, 2 * N_OF_ROWS), read(reader));
+    }
+  }
+}
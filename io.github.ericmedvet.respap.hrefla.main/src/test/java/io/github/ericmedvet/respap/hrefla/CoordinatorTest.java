@@ -0,0 +1,168 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoordinatorTest {
+
+  private final static String TASK = "task";
+  private final static int N_OF_ITEMS = 40;
+  private final static String STARTED = "started";
+
+  /**
+   * A worker whose simulations sleep for a long time, to be run in its own JVM and killed in the middle of its lease;
+   * it prints a line when a simulation starts.
+   */
+  static class SleepingWorker {
+    public static void main(String[] args) {
+      worker(Integer.parseInt(args[0])).run((task, cFunctions) -> (target, genotype) -> {
+        System.out.println(STARTED);
+        System.out.flush();
+        return sleeping(60000, new AtomicInteger()).simulate(target, genotype);
+      });
+    }
+  }
+
+  private static boolean awaitLine(Process process, String line) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(
+        process.getInputStream(),
+        StandardCharsets.UTF_8
+    ));
+    String read;
+    while ((read = reader.readLine()) != null) {
+      if (read.equals(line)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Worker worker(int port) {
+    Worker worker = new Worker();
+    worker.port = port;
+    worker.nOfThreads = 2;
+    worker.leaseSize = 5;
+    return worker;
+  }
+
+  private static Thread start(Worker worker, Worker.SimulatorFactory simulatorFactory) {
+    Thread thread = new Thread(() -> worker.run(simulatorFactory));
+    thread.start();
+    return thread;
+  }
+
+  private static Evaluator.Simulator sleeping(long millis, AtomicInteger counter) {
+    return (target, genotype) -> {
+      counter.incrementAndGet();
+      try {
+        Thread.sleep(millis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+      return new double[]{genotype[0]};
+    };
+  }
+
+  private static List<Future<double[]>> submit(Coordinator coordinator, ExecutorService executorService) {
+    Evaluator.Simulator simulator = coordinator.simulator(TASK);
+    List<Future<double[]>> futures = new ArrayList<>();
+    for (int i = 0; i < N_OF_ITEMS; i = i + 1) {
+      double[] genotype = new double[]{i};
+      futures.add(executorService.submit(() -> simulator.simulate("target", genotype)));
+    }
+    return futures;
+  }
+
+  private static void check(List<Future<double[]>> futures) throws Exception {
+    for (int i = 0; i < futures.size(); i = i + 1) {
+      assertArrayEquals(new double[]{i}, futures.get(i).get(30, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  void itemsOfKilledWorkerAreRedoneByOtherWorker() throws Exception {
+    ExecutorService executorService = Executors.newFixedThreadPool(N_OF_ITEMS);
+    AtomicInteger nOfKilledSimulations = new AtomicInteger();
+    AtomicInteger nOfSimulations = new AtomicInteger();
+    try (Coordinator coordinator = new Coordinator(0, List.of("c"), 60000)) {
+      Thread killed = start(worker(coordinator.port()), (task, cFunctions) -> sleeping(60000, nOfKilledSimulations));
+      List<Future<double[]>> futures = submit(coordinator, executorService);
+      while (nOfKilledSimulations.get() == 0) {
+        Thread.sleep(10);
+      }
+      Thread other = start(worker(coordinator.port()), (task, cFunctions) -> sleeping(10, nOfSimulations));
+      //the killed worker is in the middle of its lease
+      killed.interrupt();
+      killed.join();
+      check(futures);
+      assertEquals(N_OF_ITEMS, nOfSimulations.get());
+      coordinator.close();
+      other.join();
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  void itemsOfKilledWorkerProcessAreRedoneByOtherWorker() throws Exception {
+    ExecutorService executorService = Executors.newFixedThreadPool(N_OF_ITEMS);
+    AtomicInteger nOfSimulations = new AtomicInteger();
+    Process process = null;
+    try (Coordinator coordinator = new Coordinator(0, List.of("c"), 60000)) {
+      process = new ProcessBuilder(
+          Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+          "-cp",
+          System.getProperty("java.class.path"),
+          SleepingWorker.class.getName(),
+          Integer.toString(coordinator.port())
+      ).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+      List<Future<double[]>> futures = submit(coordinator, executorService);
+      //the killed worker is in the middle of its lease
+      assertTrue(awaitLine(process, STARTED));
+      process.destroyForcibly().waitFor();
+      Thread other = start(worker(coordinator.port()), (task, cFunctions) -> sleeping(10, nOfSimulations));
+      check(futures);
+      assertEquals(N_OF_ITEMS, nOfSimulations.get());
+      coordinator.close();
+      other.join();
+    } finally {
+      if (process != null) {
+        process.destroyForcibly();
+      }
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  void slowWorkerIsKeptAliveByHeartbeats() throws Exception {
+    ExecutorService executorService = Executors.newFixedThreadPool(N_OF_ITEMS);
+    AtomicInteger nOfSimulations = new AtomicInteger();
+    try (Coordinator coordinator = new Coordinator(0, List.of("c"), 200)) {
+      List<Thread> workers = List.of(
+          start(worker(coordinator.port()), (task, cFunctions) -> sleeping(500, nOfSimulations)),
+          start(worker(coordinator.port()), (task, cFunctions) -> sleeping(500, nOfSimulations))
+      );
+      check(submit(coordinator, executorService));
+      //no item has been given to another worker after a timeout
+      assertEquals(N_OF_ITEMS, nOfSimulations.get());
+      coordinator.close();
+      for (Thread worker : workers) {
+        worker.join();
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FitnessCacheTest {
+
+  private final static double[] GENOTYPE = {0.1, -0.2, 0.3};
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void valuesSurviveReopening() throws IOException {
+    Path path = dir.resolve("cache");
+    FitnessCache.Key key = FitnessCache.key("target", "task", "cFunction", 1, GENOTYPE);
+    try (FitnessCache cache = new FitnessCache(path, 16)) {
+      cache.put(key, 1.5);
+    }
+    try (FitnessCache cache = new FitnessCache(path, 16)) {
+      assertEquals(Double.valueOf(1.5), cache.get(key));
+    }
+  }
+
+  @Test
+  void keyDependsOnRepeats() {
+    assertNotEquals(
+        FitnessCache.key("target", "task", "cFunction", 1, GENOTYPE),
+        FitnessCache.key("target", "task", "cFunction", 3, GENOTYPE)
+    );
+  }
+
+  @Test
+  void openFileIsNotOpenedAgain() throws IOException {
+    Path path = dir.resolve("cache");
+    try (FitnessCache ignored = new FitnessCache(path, 16)) {
+      assertThrows(IOException.class, () -> new FitnessCache(path, 16));
+    }
+  }
+}
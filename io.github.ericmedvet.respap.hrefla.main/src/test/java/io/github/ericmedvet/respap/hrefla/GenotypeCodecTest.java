@@ -0,0 +1,50 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GenotypeCodecTest {
+
+  private final static double[] GENOTYPE = {0.1, -0.25, 1d / 3d, 0, -1e-7};
+
+  @Test
+  void float64RoundTripIsExact() {
+    String s = GenotypeCodec.encodeToString(GENOTYPE, GenotypeCodec.Precision.FLOAT64);
+    assertArrayEquals(GENOTYPE, GenotypeCodec.decodeToArray(s));
+  }
+
+  @Test
+  void float32RoundTripIsApproximate() {
+    byte[] bytes = GenotypeCodec.encode(GENOTYPE, GenotypeCodec.Precision.FLOAT32);
+    assertEquals(6 + GENOTYPE.length * Float.BYTES, bytes.length);
+    assertArrayEquals(GENOTYPE, GenotypeCodec.decodeToArray(bytes), 1e-7);
+  }
+
+  @Test
+  void legacySerializationIsDetected() throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+      oos.writeObject(new ArrayList<>(Vectors.asList(GENOTYPE)));
+    }
+    String s = Base64.getEncoder().encodeToString(baos.toByteArray());
+    assertEquals(Vectors.asList(GENOTYPE), GenotypeCodec.decode(s));
+  }
+
+  @Test
+  void wrongEncodingsAreRejected() {
+    byte[] bytes = GenotypeCodec.encode(GENOTYPE, GenotypeCodec.Precision.FLOAT64);
+    assertThrows(IllegalArgumentException.class, () -> GenotypeCodec.decodeToArray(new byte[]{9, 0, 0, 0, 0, 0}));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> GenotypeCodec.decodeToArray(Arrays.copyOf(bytes, bytes.length - 1))
+    );
+  }
+}
@@ -0,0 +1,84 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalTest {
+
+  private final static String HEADER = "sampler=GRID";
+  private final static String COMMITTED = "#" + HEADER + "\n0\n1\n@10\n";
+
+  @TempDir
+  Path dir;
+
+  private Path write(String name, String content) throws IOException {
+    return Files.writeString(dir.resolve(name), content, StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void tornTailIsNotCommitted() throws IOException {
+    Journal.State state = Journal.read(write("j", COMMITTED + "2\n3\n@2"));
+    assertEquals(HEADER, state.header());
+    assertEquals(Set.of("0", "1"), state.keys());
+    assertEquals(10, state.outputLength());
+    assertEquals(COMMITTED.length(), state.length());
+  }
+
+  @Test
+  void resumeTruncatesOutputAndJournal() throws IOException {
+    Path journalPath = write("j", COMMITTED + "2\n3\n@2");
+    Path outputPath = write("o", "x".repeat(30));
+    Journal.State state = Journal.resume(journalPath, outputPath, HEADER);
+    assertEquals(10, Files.size(outputPath));
+    assertEquals(COMMITTED, Files.readString(journalPath));
+    //keys after the resume are committed without the ones of the dropped tail
+    RowSink sink = RowSink.of(
+        RowSink.Format.CSV,
+        outputPath,
+        List.of(new RowSink.Column("q", RowSink.Type.DOUBLE)),
+        state.outputLength() > 0
+    );
+    Journal journal = new Journal(journalPath, HEADER, 1, sink, true);
+    journal.record("4", List.of(4d));
+    sink.close();
+    journal.close();
+    state = Journal.read(journalPath);
+    assertEquals(Set.of("0", "1", "4"), state.keys());
+    assertEquals(Files.size(outputPath), state.outputLength());
+  }
+
+  @Test
+  void keyOfUnwrittenRowIsDropped() throws IOException {
+    Path journalPath = dir.resolve("j");
+    RowSink sink = RowSink.of(
+        RowSink.Format.COLUMNAR,
+        dir.resolve("o"),
+        List.of(new RowSink.Column("q", RowSink.Type.DOUBLE)),
+        false
+    );
+    Journal journal = new Journal(journalPath, HEADER, 1, sink, false);
+    journal.record("0", List.of(0d));
+    assertThrows(IllegalArgumentException.class, () -> journal.record("1", List.of(1d, 1d)));
+    journal.record("2", List.of(2d));
+    sink.close();
+    journal.close();
+    assertEquals(Set.of("0", "2"), Journal.read(journalPath).keys());
+  }
+
+  @Test
+  void resumeRejectsOtherHeader() throws IOException {
+    Path journalPath = write("j", COMMITTED);
+    Path outputPath = write("o", "x".repeat(10));
+    assertThrows(IllegalArgumentException.class, () -> Journal.resume(journalPath, outputPath, "sampler=SOBOL"));
+    assertEquals(10, Files.size(outputPath));
+  }
+}
@@ -0,0 +1,60 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class MultiFidelityTest {
+
+  private final static double[] QS = {1, 0.95, 2, 1.08, 0.5};
+
+  @Test
+  void topKPromotesTheLargest() {
+    assertArrayEquals(
+        new boolean[]{false, false, true, true, false},
+        MultiFidelity.promote(MultiFidelity.Rule.TOP_K, QS, 2, 0.1, 0, Double.NaN)
+    );
+    assertArrayEquals(
+        new boolean[]{true, true, true, true, true},
+        MultiFidelity.promote(MultiFidelity.Rule.TOP_K, QS, 10, 0.1, 0, Double.NaN)
+    );
+  }
+
+  @Test
+  void nearReferencePromotesWithinTolerance() {
+    //the reference is the first q, unless given
+    assertArrayEquals(
+        new boolean[]{true, true, false, true, false},
+        MultiFidelity.promote(MultiFidelity.Rule.NEAR_REFERENCE, QS, 0, 0.1, 0, Double.NaN)
+    );
+    assertArrayEquals(
+        new boolean[]{false, false, true, false, false},
+        MultiFidelity.promote(MultiFidelity.Rule.NEAR_REFERENCE, QS, 0, 0.1, 0, 2)
+    );
+  }
+
+  @Test
+  void disagreementPromotesBothPointsOfAJump() {
+    assertArrayEquals(
+        new boolean[]{false, true, true, true, true},
+        MultiFidelity.promote(MultiFidelity.Rule.DISAGREEMENT, QS, 0, 0.1, 0, Double.NaN)
+    );
+  }
+
+  @Test
+  void absoluteToleranceHoldsForReferencesCloseToZero() {
+    double[] qs = {0, 0.001, -0.002, 0.5};
+    assertArrayEquals(
+        new boolean[]{true, false, false, false},
+        MultiFidelity.promote(MultiFidelity.Rule.NEAR_REFERENCE, qs, 0, 0.1, 0, Double.NaN)
+    );
+    assertArrayEquals(
+        new boolean[]{true, true, true, false},
+        MultiFidelity.promote(MultiFidelity.Rule.NEAR_REFERENCE, qs, 0, 0.1, 0.01, Double.NaN)
+    );
+    assertArrayEquals(
+        new boolean[]{false, false, true, true},
+        MultiFidelity.promote(MultiFidelity.Rule.DISAGREEMENT, qs, 0, 0.1, 0.01, Double.NaN)
+    );
+  }
+}
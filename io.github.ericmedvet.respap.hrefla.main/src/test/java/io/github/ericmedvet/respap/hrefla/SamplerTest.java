@@ -0,0 +1,107 @@
+package io.github.ericmedvet.respap.hrefla;
+
+import io.github.ericmedvet.mrsim2d.core.util.DoubleRange;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SamplerTest {
+
+  private final static DoubleRange DOMAIN = DoubleRange.SYMMETRIC_UNIT;
+  private final static int P = 5;
+  private final static int SIZE = 1000;
+
+  private static List<Sampler> samplers() {
+    return List.of(
+        new Grid(P, 4, DOMAIN),
+        new HaltonSampler(P, SIZE, DOMAIN),
+        new SobolSampler(P, SIZE, DOMAIN),
+        new LatinHypercubeSampler(P, SIZE, DOMAIN, 1)
+    );
+  }
+
+  //the same point, whatever the order in which indexes are visited, all distinct and in the domain
+  private static void checkPoints(Sampler sampler) {
+    double[][] points = new double[(int) sampler.size()][];
+    Set<List<Double>> distinct = new HashSet<>();
+    for (long i = 0; i < sampler.size(); i = i + 1) {
+      points[(int) i] = sampler.get(i);
+      assertEquals(sampler.p(), points[(int) i].length);
+      for (double v : points[(int) i]) {
+        assertTrue(v >= DOMAIN.min() && v <= DOMAIN.max());
+      }
+      distinct.add(Vectors.asList(points[(int) i]));
+    }
+    assertEquals(sampler.size(), distinct.size());
+    double[] out = new double[sampler.p()];
+    for (long i = sampler.size() - 1; i >= 0; i = i - 7) {
+      assertArrayEquals(points[(int) i], sampler.get(i, out));
+    }
+  }
+
+  @Test
+  void pointsDependOnIndexOnly() {
+    samplers().forEach(SamplerTest::checkPoints);
+  }
+
+  @Test
+  void indexesOutOfBoundsAreRejected() {
+    for (Sampler sampler : samplers()) {
+      assertThrows(IndexOutOfBoundsException.class, () -> sampler.get(-1));
+      assertThrows(IndexOutOfBoundsException.class, () -> sampler.get(sampler.size()));
+    }
+  }
+
+  @Test
+  void gridIndexIsMixedRadix() {
+    Grid grid = new Grid(3, 4, DOMAIN);
+    double[] values = grid.values();
+    for (long i = 0; i < grid.size(); i = i + 1) {
+      double[] point = grid.get(i);
+      long index = 0;
+      for (int d = point.length - 1; d >= 0; d = d - 1) {
+        index = index * values.length + Arrays.binarySearch(values, point[d]);
+      }
+      assertEquals(i, index);
+    }
+    Iterator<double[]> iterator = grid.iterator(10, 20);
+    for (long i = 10; i < 20; i = i + 1) {
+      assertArrayEquals(grid.get(i), iterator.next());
+    }
+    assertFalse(iterator.hasNext());
+  }
+
+  @Test
+  void sequencesDoNotDependOnSizeNorOnLaterDimensions() {
+    List<List<Sampler>> pairs = List.of(
+        List.of(new HaltonSampler(P, SIZE, DOMAIN), new HaltonSampler(P + 3, 10 * SIZE, DOMAIN)),
+        List.of(new SobolSampler(P, SIZE, DOMAIN), new SobolSampler(P + 3, 10 * SIZE, DOMAIN))
+    );
+    for (List<Sampler> pair : pairs) {
+      for (long i = 0; i < SIZE; i = i + 1) {
+        assertArrayEquals(pair.get(0).get(i), Arrays.copyOf(pair.get(1).get(i), P));
+      }
+    }
+  }
+
+  @Test
+  void latinHypercubeHasOnePointPerStratum() {
+    LatinHypercubeSampler sampler = new LatinHypercubeSampler(P, SIZE, DOMAIN, 1);
+    for (int d = 0; d < P; d = d + 1) {
+      boolean[] strata = new boolean[SIZE];
+      for (long i = 0; i < SIZE; i = i + 1) {
+        strata[(int) Math.floor(DOMAIN.normalize(sampler.get(i)[d]) * SIZE)] = true;
+      }
+      boolean[] all = new boolean[SIZE];
+      Arrays.fill(all, true);
+      assertArrayEquals(all, strata);
+    }
+    assertFalse(Arrays.equals(sampler.get(0), new LatinHypercubeSampler(P, SIZE, DOMAIN, 2).get(0)));
+  }
+}